@@ -0,0 +1,326 @@
+package de.yniklas.mongirl.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Generates a {@code de.yniklas.mongirl.MongirlMapper} for every class annotated with
+ * {@code @Store} or {@code @Dataclass} and every class declaring fields annotated with
+ * {@code @StoreWith}. The generated {@code <class name>_MongirlMapper} instantiates the class and
+ * reads and writes its stored fields in plain Java, so Mongirl doesn't need reflection for them.
+ *
+ * Private classes, inner (non-static) classes and local classes get no mapper. Private, final and
+ * static fields are left out of the mapper, Mongirl accesses them reflectively.
+ */
+public class MongirlProcessor extends AbstractProcessor {
+    static final String STORE = "de.yniklas.mongirl.Store";
+    static final String DATACLASS = "de.yniklas.mongirl.Dataclass";
+    static final String STORE_WITH = "de.yniklas.mongirl.StoreWith";
+    static final String DONT_STORE = "de.yniklas.mongirl.DontStore";
+    static final String MAPPER = "de.yniklas.mongirl.MongirlMapper";
+    static final String MAPPER_SUFFIX = "_MongirlMapper";
+
+    private final Set<String> generated = new HashSet<>();
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        return Set.of(STORE, DATACLASS, STORE_WITH);
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        Set<TypeElement> types = new LinkedHashSet<>();
+        for (TypeElement annotation : annotations) {
+            for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+                if (element.getKind() == ElementKind.CLASS) {
+                    types.add((TypeElement) element);
+                } else if (element.getKind() == ElementKind.FIELD
+                        && element.getEnclosingElement().getKind() == ElementKind.CLASS) {
+                    types.add((TypeElement) element.getEnclosingElement());
+                }
+            }
+        }
+
+        for (TypeElement type : types) {
+            if (isAccessible(type) && generated.add(type.getQualifiedName().toString())) {
+                generate(type);
+            }
+        }
+
+        // Other processors may handle the annotations as well
+        return false;
+    }
+
+    /**
+     * Whether a mapper in the package of the type can access and instantiate it.
+     */
+    private static boolean isAccessible(TypeElement type) {
+        Element element = type;
+        while (element instanceof TypeElement) {
+            TypeElement current = (TypeElement) element;
+            if (current.getModifiers().contains(Modifier.PRIVATE)) {
+                return false;
+            }
+
+            NestingKind nesting = current.getNestingKind();
+            if (nesting == NestingKind.LOCAL || nesting == NestingKind.ANONYMOUS) {
+                return false;
+            }
+            if (nesting == NestingKind.MEMBER && !current.getModifiers().contains(Modifier.STATIC)) {
+                return false;
+            }
+            element = current.getEnclosingElement();
+        }
+        return true;
+    }
+
+    private void generate(TypeElement type) {
+        String packageName = processingEnv.getElementUtils().getPackageOf(type).getQualifiedName().toString();
+        String binaryName = processingEnv.getElementUtils().getBinaryName(type).toString();
+        String simpleName = (packageName.isEmpty() ? binaryName : binaryName.substring(packageName.length() + 1))
+                .replace('$', '_') + MAPPER_SUFFIX;
+        String mapperName = packageName.isEmpty() ? simpleName : packageName + "." + simpleName;
+
+        try {
+            JavaFileObject file = processingEnv.getFiler().createSourceFile(mapperName, type);
+            try (Writer writer = file.openWriter()) {
+                writer.write(source(type, packageName, simpleName));
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+                    "Couldn't generate " + mapperName + ": " + e.getMessage(), type);
+        }
+    }
+
+    private String source(TypeElement type, String packageName, String simpleName) {
+        String className = type.getQualifiedName().toString();
+        List<VariableElement> fields = mappedFields(type);
+
+        StringBuilder source = new StringBuilder();
+        if (!packageName.isEmpty()) {
+            source.append("package ").append(packageName).append(";\n\n");
+        }
+        source.append("@javax.annotation.processing.Generated(\"").append(MongirlProcessor.class.getName()).append("\")\n");
+        source.append("@SuppressWarnings({\"rawtypes\", \"unchecked\"})\n");
+        source.append("public final class ").append(simpleName).append(" implements ").append(MAPPER).append(" {\n");
+
+        source.append("    private static final String[] FIELDS = {");
+        for (int i = 0; i < fields.size(); i++) {
+            source.append(i == 0 ? "" : ", ").append('"').append(fields.get(i).getSimpleName()).append('"');
+        }
+        source.append("};\n\n");
+
+        source.append("    @Override\n");
+        source.append("    public String[] fields() {\n");
+        source.append("        return FIELDS;\n");
+        source.append("    }\n\n");
+
+        source.append("    @Override\n");
+        source.append("    public Object newInstance() {\n");
+        source.append(newInstance(type, className));
+        source.append("    }\n\n");
+
+        source.append("    @Override\n");
+        source.append("    public Object get(Object target, int field) {\n");
+        source.append("        switch (field) {\n");
+        for (int i = 0; i < fields.size(); i++) {
+            source.append("            case ").append(i).append(": return ((").append(className).append(") target).")
+                    .append(fields.get(i).getSimpleName()).append(";\n");
+        }
+        source.append("            default: throw new IndexOutOfBoundsException(field);\n");
+        source.append("        }\n");
+        source.append("    }\n\n");
+
+        source.append("    @Override\n");
+        source.append("    public void set(Object target, int field, Object value) {\n");
+        source.append("        switch (field) {\n");
+        for (int i = 0; i < fields.size(); i++) {
+            source.append("            case ").append(i).append(": ((").append(className).append(") target).")
+                    .append(fields.get(i).getSimpleName()).append(" = ").append(unbox(fields.get(i).asType())).append("; break;\n");
+        }
+        source.append("            default: throw new IndexOutOfBoundsException(field);\n");
+        source.append("        }\n");
+        source.append("    }\n");
+
+        primitiveAccess(source, className, fields, TypeKind.INT, "Int", "int");
+        primitiveAccess(source, className, fields, TypeKind.LONG, "Long", "long");
+        primitiveAccess(source, className, fields, TypeKind.DOUBLE, "Double", "double");
+        primitiveAccess(source, className, fields, TypeKind.BOOLEAN, "Boolean", "boolean");
+
+        source.append("}\n");
+        return source.toString();
+    }
+
+    /**
+     * The stored fields declared by the type, which a mapper in the same package can read and write.
+     */
+    private static List<VariableElement> mappedFields(TypeElement type) {
+        boolean dataclass = hasAnnotation(type, DATACLASS);
+
+        List<VariableElement> fields = new ArrayList<>();
+        for (VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+            Set<Modifier> modifiers = field.getModifiers();
+            if (modifiers.contains(Modifier.STATIC) || modifiers.contains(Modifier.PRIVATE)
+                    || modifiers.contains(Modifier.FINAL)) {
+                continue;
+            }
+
+            if (!hasAnnotation(field, DONT_STORE) && (dataclass || hasAnnotation(field, STORE_WITH))) {
+                fields.add(field);
+            }
+        }
+        return fields;
+    }
+
+    private String newInstance(TypeElement type, String className) {
+        if (type.getModifiers().contains(Modifier.ABSTRACT)) {
+            return "        return null;\n";
+        }
+
+        ExecutableElement constructor = null;
+        for (ExecutableElement candidate : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+            if (candidate.getModifiers().contains(Modifier.PUBLIC)) {
+                constructor = candidate;
+                break;
+            }
+        }
+        if (constructor == null) {
+            return "        return null;\n";
+        }
+
+        StringBuilder arguments = new StringBuilder();
+        for (VariableElement parameter : constructor.getParameters()) {
+            arguments.append(arguments.length() == 0 ? "" : ", ").append(defaultValue(parameter.asType()));
+        }
+
+        String creation = "new " + className + "(" + arguments + ")";
+        if (constructor.getThrownTypes().isEmpty()) {
+            return "        return " + creation + ";\n";
+        }
+        return "        try {\n"
+                + "            return " + creation + ";\n"
+                + "        } catch (Exception e) {\n"
+                + "            throw new IllegalStateException(e);\n"
+                + "        }\n";
+    }
+
+    private void primitiveAccess(StringBuilder source, String className, List<VariableElement> fields,
+                                 TypeKind kind, String name, String primitive) {
+        List<Integer> indices = new ArrayList<>();
+        for (int i = 0; i < fields.size(); i++) {
+            if (fields.get(i).asType().getKind() == kind) {
+                indices.add(i);
+            }
+        }
+        if (indices.isEmpty()) {
+            return;
+        }
+
+        source.append("\n    @Override\n");
+        source.append("    public ").append(primitive).append(" get").append(name).append("(Object target, int field) {\n");
+        source.append("        switch (field) {\n");
+        for (int i : indices) {
+            source.append("            case ").append(i).append(": return ((").append(className).append(") target).")
+                    .append(fields.get(i).getSimpleName()).append(";\n");
+        }
+        source.append("            default: return ").append(MAPPER).append(".super.get").append(name).append("(target, field);\n");
+        source.append("        }\n");
+        source.append("    }\n\n");
+
+        source.append("    @Override\n");
+        source.append("    public void set").append(name).append("(Object target, int field, ").append(primitive).append(" value) {\n");
+        source.append("        switch (field) {\n");
+        for (int i : indices) {
+            source.append("            case ").append(i).append(": ((").append(className).append(") target).")
+                    .append(fields.get(i).getSimpleName()).append(" = value; break;\n");
+        }
+        source.append("            default: ").append(MAPPER).append(".super.set").append(name).append("(target, field, value);\n");
+        source.append("        }\n");
+        source.append("    }\n");
+    }
+
+    /**
+     * The expression converting {@code value} to the given field type, equally to the reflective accessors.
+     */
+    private String unbox(TypeMirror type) {
+        switch (type.getKind()) {
+            case INT:
+                return "((Number) value).intValue()";
+            case LONG:
+                return "((Number) value).longValue()";
+            case DOUBLE:
+                return "((Number) value).doubleValue()";
+            case BOOLEAN:
+                return "(Boolean) value";
+            case BYTE:
+                return "(Byte) value";
+            case SHORT:
+                return "(Short) value";
+            case FLOAT:
+                return "(Float) value";
+            case CHAR:
+                return "(Character) value";
+            default:
+                return "(" + processingEnv.getTypeUtils().erasure(type) + ") value";
+        }
+    }
+
+    private String defaultValue(TypeMirror type) {
+        switch (type.getKind()) {
+            case BOOLEAN:
+                return "false";
+            case BYTE:
+                return "(byte) 0";
+            case SHORT:
+                return "(short) 0";
+            case INT:
+                return "0";
+            case LONG:
+                return "0L";
+            case FLOAT:
+                return "0.0f";
+            case DOUBLE:
+                return "0.0";
+            case CHAR:
+                return "'\\u0000'";
+            default:
+                // Typed to choose the right one of overloaded constructors
+                return "(" + processingEnv.getTypeUtils().erasure(type) + ") null";
+        }
+    }
+
+    private static boolean hasAnnotation(Element element, String annotation) {
+        for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            if (((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName().contentEquals(annotation)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,120 @@
+package de.yniklas.mongirl.processor;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import javax.tools.ToolProvider;
+import java.io.StringWriter;
+import java.net.URI;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Compiles example classes with the processor against the annotation sources of Mongirl
+ * and checks the generated mappers.
+ */
+public class MongirlProcessorTests {
+    private static final String EXAMPLE = """
+            package example;
+
+            import de.yniklas.mongirl.DontStore;
+            import de.yniklas.mongirl.Store;
+            import de.yniklas.mongirl.StoreWith;
+
+            @Store(collection = "example")
+            public class Example {
+                @StoreWith public int number;
+                @StoreWith public long big;
+                @StoreWith String name;
+                @StoreWith private String secret;
+                @StoreWith @DontStore public String ignored;
+                public String notStored;
+
+                public Example(String name, int number) {
+                    this.name = name;
+                    this.number = number;
+                }
+
+                public static class Nested {
+                    @StoreWith public boolean flag;
+                }
+            }
+            """;
+
+    @TempDir
+    Path output;
+
+    @Test
+    public void testGeneratedMapper() throws Exception {
+        ClassLoader loader = compile();
+
+        Class<?> exampleClass = loader.loadClass("example.Example");
+        Object mapper = loader.loadClass("example.Example_MongirlMapper").getConstructor().newInstance();
+
+        // private, not stored and @DontStore fields are left to reflection
+        assertArrayEquals(new String[]{"number", "big", "name"}, invoke(mapper, "fields"));
+
+        Object example = invoke(mapper, "newInstance");
+        assertSame(exampleClass, example.getClass());
+
+        mapper.getClass().getMethod("set", Object.class, int.class, Object.class).invoke(mapper, example, 0, 5);
+        mapper.getClass().getMethod("setLong", Object.class, int.class, long.class).invoke(mapper, example, 1, 7L);
+        mapper.getClass().getMethod("set", Object.class, int.class, Object.class).invoke(mapper, example, 2, "mongirl");
+
+        assertEquals(5, exampleClass.getField("number").get(example));
+        assertEquals(5, mapper.getClass().getMethod("getInt", Object.class, int.class).invoke(mapper, example, 0));
+        assertEquals(7L, mapper.getClass().getMethod("get", Object.class, int.class).invoke(mapper, example, 1));
+        assertEquals("mongirl", mapper.getClass().getMethod("get", Object.class, int.class).invoke(mapper, example, 2));
+    }
+
+    @Test
+    public void testNestedClass() throws Exception {
+        ClassLoader loader = compile();
+
+        Object mapper = loader.loadClass("example.Example_Nested_MongirlMapper").getConstructor().newInstance();
+        Object nested = invoke(mapper, "newInstance");
+
+        mapper.getClass().getMethod("setBoolean", Object.class, int.class, boolean.class).invoke(mapper, nested, 0, true);
+        assertEquals(true, mapper.getClass().getMethod("get", Object.class, int.class).invoke(mapper, nested, 0));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T invoke(Object mapper, String method) throws ReflectiveOperationException {
+        return (T) mapper.getClass().getMethod(method).invoke(mapper);
+    }
+
+    private ClassLoader compile() throws Exception {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, null);
+        Files.createDirectories(output);
+        fileManager.setLocation(StandardLocation.CLASS_OUTPUT, List.of(output.toFile()));
+        fileManager.setLocation(StandardLocation.SOURCE_OUTPUT, List.of(output.toFile()));
+
+        JavaFileObject example = new SimpleJavaFileObject(URI.create("string:///example/Example.java"), JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return EXAMPLE;
+            }
+        };
+
+        // The annotations and MongirlMapper are compiled from the sources of Mongirl, see the pom
+        String mongirlSources = System.getProperty("mongirl.sources");
+        assertNotNull(mongirlSources, "The system property mongirl.sources isn't set");
+        StringWriter diagnostics = new StringWriter();
+        JavaCompiler.CompilationTask task = compiler.getTask(diagnostics, fileManager, null,
+                List.of("-sourcepath", mongirlSources, "-implicit:class"), null, List.of(example));
+        task.setProcessors(List.of(new MongirlProcessor()));
+
+        assertTrue(task.call(), diagnostics.toString());
+        return new URLClassLoader(new java.net.URL[]{output.toUri().toURL()}, getClass().getClassLoader());
+    }
+}
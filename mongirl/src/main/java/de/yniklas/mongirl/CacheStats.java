@@ -0,0 +1,47 @@
+package de.yniklas.mongirl;
+
+/**
+ * Counters of the document cache of a {@link Mongirl} instance since its creation, see
+ * {@link Cached} and {@link Mongirl#getCacheStats()}.
+ */
+public class CacheStats {
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+
+    CacheStats(long hits, long misses, long evictions) {
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+    }
+
+    /**
+     * @return the number of documents taken from the cache
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return the number of documents of cached classes which had to be fetched
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return the number of documents removed because the cache was full or they expired
+     */
+    public long getEvictions() {
+        return evictions;
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStats{" +
+                "hits=" + hits +
+                ", misses=" + misses +
+                ", evictions=" + evictions +
+                '}';
+    }
+}
@@ -0,0 +1,31 @@
+package de.yniklas.mongirl;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caches the documents of the annotated class in the {@link Mongirl} instance, so decoding an
+ * object referenced or requested again doesn't query the database. Meant for classes which are
+ * read often and rarely change. {@link Mongirl#store(Object)} invalidates the cached documents
+ * of the stored objects, changes made by other processes are seen after the expiration.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface Cached {
+    /**
+     * The maximum number of cached documents of the collection, the least recently used one is
+     * evicted first.
+     */
+    int maxEntries() default 10_000;
+
+    /**
+     * The time after which a cached document is fetched again, 0 to keep it until it's evicted or
+     * invalidated.
+     */
+    long expireAfterWrite() default 0;
+
+    TimeUnit unit() default TimeUnit.SECONDS;
+}
@@ -0,0 +1,251 @@
+package de.yniklas.mongirl;
+
+import de.yniklas.mongirl.exception.MongirlDecodeException;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Immutable mapping model of a class for the encode and decode operations of Mongirl.
+ * The model is created once per {@code Class} on first use by reflecting the annotations
+ * {@link Store}, {@link Dataclass}, {@link StoreWith}, {@link DontStore} and {@link Cached} and is shared
+ * across all {@link Mongirl} instances and threads afterwards.
+ */
+final class ClassMapping {
+    private static final ClassValue<ClassMapping> MAPPINGS = new ClassValue<>() {
+        @Override
+        protected ClassMapping computeValue(Class<?> type) {
+            return new ClassMapping(type);
+        }
+    };
+
+    private static final Map<String, Class<?>> CLASSPATHS = new ConcurrentHashMap<>();
+
+    final Class<?> type;
+
+    /**
+     * The collection name from {@link Store} or {@link Dataclass}, null if the class isn't annotated.
+     */
+    final String collection;
+
+    /**
+     * Whether the classpath has to be stored along with the objects of this class.
+     */
+    final boolean addClasspath;
+
+    /**
+     * The cache policy of the class, null if its documents aren't cached.
+     */
+    final Cached cached;
+
+    /**
+     * Whether the ids of the documents are derived from the equality requirements.
+     */
+    final boolean deterministicId;
+
+    /**
+     * Whether all attributes are equality requirements, see {@link Dataclass#allAttributesEqualRelevant()}.
+     */
+    final boolean allAttributesEqualRelevant;
+
+    /**
+     * Number of all declared fields of the class and its superclasses, stored or not.
+     */
+    final int fieldCount;
+
+    final List<FieldMapping> storedFields;
+    final List<FieldMapping> equalityFields;
+
+    /**
+     * The sorted BSON keys of the equality fields.
+     */
+    final List<String> equalityKeys;
+
+    /**
+     * The stored fields by their BSON key. If several fields share a key, the last one wins,
+     * equally to appending them to a {@code Document} one after another.
+     */
+    final Map<String, FieldMapping> fieldsByKey;
+
+    /**
+     * The generated mapper of the class, null if there is none.
+     */
+    final MongirlMapper mapper;
+    private final Constructor<?> constructor;
+    private final Object[] constructorArgs;
+
+    private ClassMapping(Class<?> type) {
+        this.type = type;
+
+        Store storeAnn = type.getAnnotation(Store.class);
+        Dataclass dataclassAnn = type.getAnnotation(Dataclass.class);
+        if (storeAnn != null) {
+            collection = storeAnn.collection();
+        } else if (dataclassAnn != null) {
+            collection = dataclassAnn.collection();
+        } else {
+            collection = null;
+        }
+
+        cached = collection == null ? null : type.getAnnotation(Cached.class);
+        deterministicId = (storeAnn != null && storeAnn.deterministicId())
+                || (dataclassAnn != null && dataclassAnn.deterministicId());
+        allAttributesEqualRelevant = dataclassAnn != null && dataclassAnn.allAttributesEqualRelevant();
+
+        // Store the classpath if annotated so or the class has a concrete super class or
+        // implements an interface
+        addClasspath = (storeAnn != null && storeAnn.addClasspath())
+                || (dataclassAnn != null && dataclassAnn.addClasspath())
+                || (type.getSuperclass() != null && type.getSuperclass() != Object.class)
+                || (type.getInterfaces().length != 0);
+
+        List<Field> fields = getFields(type);
+        List<FieldMapping> stored = new ArrayList<>();
+        List<FieldMapping> equality = new ArrayList<>();
+        Map<String, FieldMapping> byKey = new LinkedHashMap<>();
+        Map<Class<?>, MongirlMapper> mappers = new HashMap<>();
+        for (Field field : fields) {
+            MongirlMapper fieldMapper = mappers.computeIfAbsent(field.getDeclaringClass(), ClassMapping::findMapper);
+            FieldMapping fieldMapping = new FieldMapping(field, fieldMapper);
+            if (fieldMapping.stored) {
+                stored.add(fieldMapping);
+                byKey.put(fieldMapping.key, fieldMapping);
+            }
+            if (fieldMapping.equalityRelevant && fieldMapping.mongoPrimitive) {
+                equality.add(fieldMapping);
+            }
+        }
+
+        fieldCount = fields.size();
+        storedFields = Collections.unmodifiableList(stored);
+        equalityFields = Collections.unmodifiableList(equality);
+        List<String> keys = new ArrayList<>();
+        equality.forEach(fieldMapping -> keys.add(fieldMapping.key));
+        Collections.sort(keys);
+        equalityKeys = Collections.unmodifiableList(keys);
+        fieldsByKey = Collections.unmodifiableMap(byKey);
+
+        mapper = findMapper(type);
+        if (mapper == null) {
+            Constructor<?>[] constructors = type.getConstructors();
+            constructor = constructors.length == 0 ? null : constructors[0];
+            constructorArgs = constructor == null ? null : defaultArguments(constructor.getParameterTypes());
+        } else {
+            constructor = null;
+            constructorArgs = null;
+        }
+    }
+
+    /**
+     * Returns the mapping of the given class, creating it on first use.
+     *
+     * @param type the class to get the mapping from
+     * @return the mapping of the class
+     */
+    static ClassMapping of(Class<?> type) {
+        return MAPPINGS.get(type);
+    }
+
+    /**
+     * Resolves the class stored as classpath in a document.
+     *
+     * @param classpath the fully qualified class name
+     * @return the class to the classpath
+     * @throws ClassNotFoundException if there is no such class
+     */
+    static Class<?> forClasspath(String classpath) throws ClassNotFoundException {
+        Class<?> clazz = CLASSPATHS.get(classpath);
+        if (clazz == null) {
+            clazz = Class.forName(classpath);
+            CLASSPATHS.put(classpath, clazz);
+        }
+        return clazz;
+    }
+
+    /**
+     * Creates a new instance of the class with its first public constructor, called with
+     * default values for all parameters.
+     *
+     * @return the new, empty instance
+     */
+    Object newInstance() throws InstantiationException, IllegalAccessException, InvocationTargetException {
+        if (mapper != null) {
+            Object instance = mapper.newInstance();
+            if (instance == null) {
+                throw new MongirlDecodeException(String.format(MongirlDecodeException.NO_CONSTRICTOR, type.getName()));
+            }
+            return instance;
+        }
+
+        if (constructor == null) {
+            throw new MongirlDecodeException(String.format(MongirlDecodeException.NO_CONSTRICTOR, type.getName()));
+        }
+        return constructor.newInstance(constructorArgs);
+    }
+
+    /**
+     * Looks up the mapper generated by the {@code mongirl-processor} for the given class.
+     *
+     * @param type the class to find the mapper of
+     * @return the mapper or null if none was generated
+     */
+    private static MongirlMapper findMapper(Class<?> type) {
+        String mapperName = type.getName().replace('$', '_') + "_MongirlMapper";
+        try {
+            Class<?> mapperClass = Class.forName(mapperName, true, type.getClassLoader());
+            if (!MongirlMapper.class.isAssignableFrom(mapperClass)) {
+                return null;
+            }
+            return (MongirlMapper) mapperClass.getConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    private static Object[] defaultArguments(Class<?>[] parameterTypes) {
+        Object[] args = new Object[parameterTypes.length];
+        for (int i = 0; i < parameterTypes.length; i++) {
+            Class<?> parameterType = parameterTypes[i];
+            if (parameterType.equals(boolean.class)) {
+                args[i] = false;
+            } else if (parameterType.equals(byte.class)) {
+                args[i] = (byte) 0;
+            } else if (parameterType.equals(short.class)) {
+                args[i] = (short) 0;
+            } else if (parameterType.equals(int.class)) {
+                args[i] = 0;
+            } else if (parameterType.equals(long.class)) {
+                args[i] = 0L;
+            } else if (parameterType.equals(float.class)) {
+                args[i] = 0.0f;
+            } else if (parameterType.equals(double.class)) {
+                args[i] = 0.0;
+            } else if (parameterType.equals(char.class)) {
+                args[i] = '\u0000';
+            } else {
+                args[i] = null;
+            }
+        }
+        return args;
+    }
+
+    private static List<Field> getFields(Class<?> targetClass) {
+        List<Field> fields = new ArrayList<>();
+        Class<?> clazz = targetClass;
+
+        while (clazz != null && clazz != Object.class) {
+            fields.addAll(Arrays.asList(clazz.getDeclaredFields()));
+            clazz = clazz.getSuperclass();
+        }
+        return fields;
+    }
+}
@@ -18,4 +18,11 @@ public @interface Dataclass {
      * For the safety (but disk-space heavy) way, set this to false.
      */
     boolean allAttributesEqualRelevant() default true;
+
+    /**
+     * Derives the _id of the documents from the values of the equality requirements, so stores
+     * and references don't have to look up the ids of stored objects. Only enable it for
+     * collections whose documents are all stored with it.
+     */
+    boolean deterministicId() default false;
 }
@@ -0,0 +1,359 @@
+package de.yniklas.mongirl;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Filters;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.types.ObjectId;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * State of one decode operation. Referenced objects aren't decoded recursively, but collected
+ * while their referencing documents are decoded and resolved level by level afterwards: all
+ * pending references of one depth are fetched with a single {@code $in} query per collection.
+ *
+ * Every document is decoded at most once per context, so cycles and objects referenced multiple
+ * times result in the same instance. The references are assigned after the whole graph is decoded,
+ * the deepest level first, so objects are complete when they are added to e.g. a {@code Set}.
+ */
+final class DecodeContext implements MongirlCodec.ReferenceDecoder {
+    /**
+     * Maximum number of ids in one {@code $in} query.
+     */
+    static final int BATCH_SIZE = 1000;
+
+    private final Mongirl mongirl;
+
+    /**
+     * The decoded objects by their ids. Ids of missing documents map to null.
+     */
+    private final Map<ObjectId, Object> decoded = new HashMap<>();
+
+    /**
+     * Documents known before they are referenced, e.g. from a join or a cursor, by collection and id.
+     */
+    private final Map<String, Map<ObjectId, Object>> prefetched = new HashMap<>();
+
+    /**
+     * The references of the next level, by collection and id.
+     */
+    private Map<String, Map<ObjectId, List<Reference>>> pending = new LinkedHashMap<>();
+
+    /**
+     * The assignments of all resolved levels, the deepest one on top.
+     */
+    private final Deque<List<Runnable>> assignments = new ArrayDeque<>();
+
+    /**
+     * The references of the level being resolved and its documents known without a query.
+     */
+    private Map<String, Map<ObjectId, List<Reference>>> level = Map.of();
+    private final Map<ObjectId, Object> levelDocuments = new HashMap<>();
+
+    /**
+     * @param mongirl the instance to fetch documents with, null if the levels are fetched by the
+     *                caller through {@link #nextLevel()} and {@link #completeLevel(Map)}
+     */
+    DecodeContext(Mongirl mongirl) {
+        this.mongirl = mongirl;
+    }
+
+    /**
+     * Decodes the object with the given id and everything it references.
+     *
+     * @param targetClass the class of the object
+     * @param id the id of the objects document
+     * @param <T> the type of the object
+     * @return the decoded object or null if there is no such document
+     */
+    @SuppressWarnings("unchecked")
+    <T> T decode(Class<T> targetClass, ObjectId id) {
+        if (Mongirl.collection(targetClass) == null) {
+            return null;
+        }
+
+        decodeReference(id, targetClass, null);
+        resolve();
+        return (T) decoded.get(id);
+    }
+
+    /**
+     * Decodes an object from an already fetched document.
+     *
+     * @param targetClass the class of the object
+     * @param id the id of the document
+     * @param document the document, a {@code Document} or a {@code RawBsonDocument}
+     * @param <T> the type of the object
+     * @return the decoded object
+     */
+    <T> T decode(Class<T> targetClass, ObjectId id, Object document) {
+        String collection = Mongirl.collection(targetClass);
+        if (collection != null) {
+            prefetch(collection, id, document);
+        }
+        return decode(targetClass, id);
+    }
+
+    /**
+     * Decodes the objects with the given ids, fetched and resolved together.
+     *
+     * @param targetClass the class of the objects
+     * @param ids the ids of the objects documents
+     * @param <T> the type of the objects
+     * @return the decoded objects in the order of the ids, null for missing documents
+     */
+    @SuppressWarnings("unchecked")
+    <T> List<T> decodeAll(Class<T> targetClass, Collection<ObjectId> ids) {
+        List<T> objects = new ArrayList<>(ids.size());
+        if (Mongirl.collection(targetClass) == null) {
+            ids.forEach(id -> objects.add(null));
+            return objects;
+        }
+
+        for (ObjectId id : ids) {
+            decodeReference(id, targetClass, null);
+        }
+        resolve();
+
+        for (ObjectId id : ids) {
+            objects.add((T) decoded.get(id));
+        }
+        return objects;
+    }
+
+    /**
+     * Decodes objects from already fetched documents. The references of all documents are resolved
+     * together.
+     *
+     * @param targetClass the class of the objects
+     * @param documents the documents by their ids
+     * @param <T> the type of the objects
+     * @return the decoded objects in the order of the documents
+     */
+    @SuppressWarnings("unchecked")
+    <T> List<T> decode(Class<T> targetClass, Map<ObjectId, ?> documents) {
+        String collection = Mongirl.collection(targetClass);
+        if (collection == null) {
+            return new ArrayList<>();
+        }
+
+        documents.forEach((id, document) -> {
+            prefetch(collection, id, document);
+            decodeReference(id, targetClass, null);
+        });
+        resolve();
+
+        List<T> objects = new ArrayList<>(documents.size());
+        for (ObjectId id : documents.keySet()) {
+            objects.add((T) decoded.get(id));
+        }
+        return objects;
+    }
+
+    /**
+     * Adds a document which doesn't need to be fetched when it's referenced.
+     *
+     * @param collection the collection of the document
+     * @param id the id of the document
+     * @param document the document, a {@code Document} or a {@code RawBsonDocument}
+     */
+    void prefetch(String collection, ObjectId id, Object document) {
+        if (decoded.containsKey(id)) {
+            return;
+        }
+        prefetched.computeIfAbsent(collection, key -> new HashMap<>()).put(id, document);
+    }
+
+    /**
+     * Registers a reference to be resolved with the next level.
+     *
+     * @param id the id of the referenced document
+     * @param targetClass the class of the referenced object
+     * @param assignment the assignment of the decoded object, may be null
+     */
+    @Override
+    public void decodeReference(ObjectId id, Class<?> targetClass, Consumer<Object> assignment) {
+        String collection = Mongirl.collection(targetClass);
+        if (collection == null) {
+            if (assignment != null) {
+                assignment.accept(null);
+            }
+            return;
+        }
+
+        pending.computeIfAbsent(collection, key -> new LinkedHashMap<>())
+                .computeIfAbsent(id, key -> new ArrayList<>())
+                .add(new Reference(targetClass, assignment));
+    }
+
+    /**
+     * Resolves all pending references level by level and assigns them afterwards.
+     */
+    void resolve() {
+        for (Map<String, List<ObjectId>> missing = nextLevel(); missing != null; missing = nextLevel()) {
+            Map<ObjectId, Object> documents = new HashMap<>();
+            missing.forEach((collection, ids) -> documents.putAll(fetchCoalesced(collection, ids)));
+            completeLevel(documents);
+        }
+        assign();
+    }
+
+    /**
+     * Starts resolving the pending references as the next level. Prefetched, cached and snapshot
+     * documents of the level are taken without a query.
+     *
+     * @return the ids of the documents to fetch for the level by collection, null if there are
+     *         no pending references
+     */
+    Map<String, List<ObjectId>> nextLevel() {
+        if (pending.isEmpty()) {
+            return null;
+        }
+
+        level = pending;
+        pending = new LinkedHashMap<>();
+        levelDocuments.clear();
+
+        Map<String, List<ObjectId>> missing = new LinkedHashMap<>();
+        level.forEach((collection, references) -> {
+            Map<ObjectId, Object> known = prefetched.getOrDefault(collection, Map.of());
+            for (ObjectId id : references.keySet()) {
+                if (decoded.containsKey(id)) {
+                    continue;
+                }
+
+                Object document = known.isEmpty() ? null : known.remove(id);
+                if (document == null && mongirl != null) {
+                    document = mongirl.entityCache.get(collection, references.get(id).get(0).targetClass, id);
+                }
+                if (document == null && mongirl != null) {
+                    document = mongirl.snapshotDocument(collection, id);
+                }
+                if (document == null) {
+                    missing.computeIfAbsent(collection, key -> new ArrayList<>()).add(id);
+                } else {
+                    levelDocuments.put(id, document);
+                }
+            }
+        });
+        return missing;
+    }
+
+    /**
+     * Decodes the documents of the current level, which registers the references of the next one.
+     *
+     * @param documents the fetched documents by their ids, missing documents are decoded to null
+     */
+    void completeLevel(Map<ObjectId, Object> documents) {
+        List<Runnable> levelAssignments = new ArrayList<>();
+        level.forEach((collection, references) -> references.forEach((id, referencesOfId) -> {
+            if (!decoded.containsKey(id)) {
+                Object document = levelDocuments.getOrDefault(id, documents.get(id));
+                Class<?> targetClass = referencesOfId.get(0).targetClass;
+                Object object = document == null ? null : Mongirl.create(targetClass, document, this);
+                decoded.put(id, object);
+                if (mongirl != null) {
+                    mongirl.seen(collection, object, id, document);
+                }
+            }
+
+            for (Reference reference : referencesOfId) {
+                if (reference.assignment != null) {
+                    levelAssignments.add(() -> reference.assignment.accept(decoded.get(id)));
+                }
+            }
+        }));
+        assignments.push(levelAssignments);
+        level = Map.of();
+    }
+
+    /**
+     * Assigns the references of all resolved levels, the deepest level first.
+     */
+    void assign() {
+        while (!assignments.isEmpty()) {
+            assignments.pop().forEach(Runnable::run);
+        }
+    }
+
+    /**
+     * Returns a decoded object, null if it isn't decoded or its document is missing.
+     */
+    Object get(ObjectId id) {
+        return decoded.get(id);
+    }
+
+    /**
+     * Adds an object which is known without decoding it, e.g. because it was just stored.
+     */
+    void put(ObjectId id, Object object) {
+        decoded.put(id, object);
+    }
+
+    /**
+     * Fetches the documents with the given ids, joining the fetches of other threads if
+     * {@link Mongirl#coalesceFetches} is enabled.
+     */
+    private Map<ObjectId, Object> fetchCoalesced(String collection, List<ObjectId> ids) {
+        if (mongirl.coalesceFetches) {
+            return mongirl.inFlightFetches.fetch(collection, ids, owned -> fetch(collection, owned));
+        }
+        return fetch(collection, ids);
+    }
+
+    /**
+     * Fetches the documents with the given ids from a collection, {@link #BATCH_SIZE} ids per query,
+     * and caches them, see {@link EntityCache#fill(String)}.
+     *
+     * @return the found documents by their ids
+     */
+    private Map<ObjectId, Object> fetch(String collection, List<ObjectId> ids) {
+        EntityCache.Fill fill = mongirl.entityCache.fill(collection);
+        Map<ObjectId, Object> documents = new HashMap<>();
+        for (int from = 0; from < ids.size(); from += BATCH_SIZE) {
+            List<ObjectId> batch = ids.subList(from, Math.min(from + BATCH_SIZE, ids.size()));
+
+            if (mongirl.codecMode) {
+                MongoCollection<RawBsonDocument> rawCollection = mongirl.getDB().getCollection(collection, RawBsonDocument.class);
+                for (RawBsonDocument document : rawCollection.find(Filters.in("_id", batch))) {
+                    documents.put(idOf(document), document);
+                }
+            } else {
+                for (Document document : mongirl.getDB().getCollection(collection).find(Filters.in("_id", batch))) {
+                    documents.put(idOf(document), document);
+                }
+            }
+        }
+        documents.forEach(fill::put);
+        return documents;
+    }
+
+    /**
+     * Returns the id of a {@code Document} or a {@code RawBsonDocument}.
+     */
+    static ObjectId idOf(Object document) {
+        if (document instanceof RawBsonDocument) {
+            return ((RawBsonDocument) document).getObjectId("_id").getValue();
+        }
+        return ((Document) document).getObjectId("_id");
+    }
+
+    private static final class Reference {
+        final Class<?> targetClass;
+        final Consumer<Object> assignment;
+
+        Reference(Class<?> targetClass, Consumer<Object> assignment) {
+            this.targetClass = targetClass;
+            this.assignment = assignment;
+        }
+    }
+}
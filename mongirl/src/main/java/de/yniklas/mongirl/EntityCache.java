@@ -0,0 +1,251 @@
+package de.yniklas.mongirl;
+
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.DocumentCodec;
+import org.bson.types.ObjectId;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The document cache of a {@link Mongirl} instance: one size bounded LRU region per collection of
+ * a class annotated with {@link Cached} and, if enabled, an {@link OffHeapCache} for the documents
+ * of all classes behind it. The fetched documents are cached rather than the decoded objects, so
+ * every decode still creates its own instances and callers can't change each others objects.
+ */
+final class EntityCache {
+    private final Mongirl mongirl;
+    private final Map<String, Region> regions = new ConcurrentHashMap<>();
+
+    /**
+     * The off-heap tier, null if it isn't enabled.
+     */
+    private volatile OffHeapCache offHeap;
+
+    /**
+     * The versions of the cached collections, incremented by every invalidation. A document
+     * fetched before an invalidation isn't cached, as it may be the outdated version.
+     */
+    private final Map<String, Version> versions = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    EntityCache(Mongirl mongirl) {
+        this.mongirl = mongirl;
+    }
+
+    /**
+     * Replaces the off-heap tier, fetches started before keep filling the previous one.
+     */
+    void enableOffHeap(long capacity) {
+        offHeap = capacity > 0 ? new OffHeapCache(capacity) : null;
+    }
+
+    /**
+     * Returns a cached document.
+     *
+     * @param collection the collection of the document
+     * @param targetClass the class decoded from the document, creates the region if it is {@link Cached}
+     * @param id the id of the document
+     * @return the document or null if it isn't cached
+     */
+    Object get(String collection, Class<?> targetClass, ObjectId id) {
+        Region region = regions.get(collection);
+        if (region == null) {
+            Cached cached = ClassMapping.of(targetClass).cached;
+            if (cached != null) {
+                region = regions.computeIfAbsent(collection, key -> new Region(cached));
+            }
+        }
+
+        if (region != null) {
+            Object document = region.get(id);
+            (document == null ? misses : hits).increment();
+            if (document != null) {
+                return document;
+            }
+        }
+
+        OffHeapCache tier = offHeap;
+        RawBsonDocument raw = tier == null ? null : tier.get(collection, id);
+        if (raw == null || mongirl.codecMode) {
+            return raw;
+        }
+        return raw.decode(new DocumentCodec(mongirl.getDB().getCodecRegistry()));
+    }
+
+    /**
+     * Starts a fetch of documents of a collection, before its query is sent.
+     *
+     * @return caches the fetched documents unless the collection is invalidated meanwhile
+     */
+    Fill fill(String collection) {
+        // The region and the tier are taken first: if they don't exist yet, an invalidation
+        // skipped because of that finished before the fetch starts
+        Region region = regions.get(collection);
+        OffHeapCache tier = offHeap;
+        Version version = version(collection);
+        synchronized (version) {
+            return new Fill(collection, region, tier, version, version.value);
+        }
+    }
+
+    /**
+     * Removes a written document. Only collections with a region or in the off-heap tier are
+     * invalidated, fetches of other collections aren't affected.
+     */
+    void invalidate(String collection, ObjectId id) {
+        Region region = regions.get(collection);
+        OffHeapCache tier = offHeap;
+        if (region == null && tier == null) {
+            return;
+        }
+
+        Version version = version(collection);
+        synchronized (version) {
+            version.value++;
+            if (region != null) {
+                region.remove(id);
+            }
+            if (tier != null) {
+                tier.invalidate(collection, id);
+            }
+        }
+    }
+
+    void invalidateAll() {
+        for (Version version : versions.values()) {
+            synchronized (version) {
+                version.value++;
+            }
+        }
+        regions.values().forEach(Region::clear);
+
+        OffHeapCache tier = offHeap;
+        if (tier != null) {
+            tier.invalidateAll();
+        }
+    }
+
+    CacheStats stats() {
+        return new CacheStats(hits.sum(), misses.sum(), evictions.sum());
+    }
+
+    /**
+     * @return the counters of the off-heap tier, null if it isn't enabled
+     */
+    CacheStats offHeapStats() {
+        OffHeapCache tier = offHeap;
+        return tier == null ? null : tier.stats();
+    }
+
+    private Version version(String collection) {
+        return versions.computeIfAbsent(collection, key -> new Version());
+    }
+
+    /**
+     * The cache writes of one fetch, see {@link #fill(String)}.
+     */
+    final class Fill {
+        private final String collection;
+        private final Region region;
+        private final OffHeapCache tier;
+        private final Version version;
+        private final long since;
+
+        private Fill(String collection, Region region, OffHeapCache tier, Version version, long since) {
+            this.collection = collection;
+            this.region = region;
+            this.tier = tier;
+            this.version = version;
+            this.since = since;
+        }
+
+        /**
+         * Caches a fetched document if its collection is cached and wasn't invalidated since the
+         * fetch started. Checked and written under the lock of the invalidations.
+         */
+        void put(ObjectId id, Object document) {
+            if (region == null && tier == null) {
+                return;
+            }
+
+            synchronized (version) {
+                if (version.value != since) {
+                    return;
+                }
+                if (region != null) {
+                    region.put(id, document);
+                }
+                if (tier != null) {
+                    tier.put(collection, id, document instanceof RawBsonDocument ? (RawBsonDocument) document
+                            : new RawBsonDocument((Document) document, new DocumentCodec(mongirl.getDB().getCodecRegistry())));
+                }
+            }
+        }
+    }
+
+    private static final class Version {
+        long value;
+    }
+
+    private final class Region {
+        private final long expireAfterWrite;
+        private final Map<ObjectId, Cell> cells;
+
+        Region(Cached cached) {
+            this.expireAfterWrite = cached.unit().toNanos(cached.expireAfterWrite());
+            int maxEntries = Math.max(1, cached.maxEntries());
+            this.cells = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<ObjectId, Cell> eldest) {
+                    if (size() > maxEntries) {
+                        evictions.increment();
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+
+        synchronized Object get(ObjectId id) {
+            Cell cell = cells.get(id);
+            if (cell == null) {
+                return null;
+            }
+            if (expireAfterWrite > 0 && System.nanoTime() - cell.written > expireAfterWrite) {
+                cells.remove(id);
+                evictions.increment();
+                return null;
+            }
+            return cell.document;
+        }
+
+        synchronized void put(ObjectId id, Object document) {
+            cells.put(id, new Cell(document, System.nanoTime()));
+        }
+
+        synchronized void remove(ObjectId id) {
+            cells.remove(id);
+        }
+
+        synchronized void clear() {
+            cells.clear();
+        }
+    }
+
+    private static final class Cell {
+        final Object document;
+        final long written;
+
+        Cell(Object document, long written) {
+            this.document = document;
+            this.written = written;
+        }
+    }
+}
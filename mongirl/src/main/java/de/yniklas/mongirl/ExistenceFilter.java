@@ -0,0 +1,102 @@
+package de.yniklas.mongirl;
+
+import org.bson.BsonBinaryWriter;
+import org.bson.BsonDocument;
+import org.bson.codecs.BsonDocumentCodec;
+import org.bson.codecs.EncoderContext;
+import org.bson.io.BasicOutputBuffer;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A Bloom filter over the equality requirements of the stored documents of one collection, see
+ * {@link Mongirl#buildExistenceFilter(Class, long)}. Equality requirements it doesn't contain
+ * definitely aren't stored, those it contains are stored with a probability of about 99% at the
+ * expected number of documents. Adding is thread safe and lock free.
+ */
+final class ExistenceFilter {
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+
+    private final AtomicLongArray bits;
+    private final long size;
+    private final int hashes;
+
+    /**
+     * Whether all stored documents are added, until then the filter isn't used.
+     */
+    private volatile boolean complete = false;
+
+    /**
+     * @param expectedEntries the expected number of stored documents
+     */
+    ExistenceFilter(long expectedEntries) {
+        long entries = Math.max(1, expectedEntries);
+        long bitCount = (long) Math.ceil(-entries * Math.log(FALSE_POSITIVE_RATE) / (Math.log(2) * Math.log(2)));
+        this.bits = new AtomicLongArray((int) Math.min(Integer.MAX_VALUE, (bitCount + 63) / 64));
+        this.size = (long) bits.length() * 64;
+        this.hashes = Math.max(1, (int) Math.round((double) size / entries * Math.log(2)));
+    }
+
+    void add(BsonDocument key) {
+        long hash1 = hash(key);
+        long hash2 = mix(hash1);
+        for (int i = 0; i < hashes; i++) {
+            long bit = Math.floorMod(hash1 + i * hash2, size);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+
+            long current = bits.get(word);
+            while ((current & mask) == 0 && !bits.compareAndSet(word, current, current | mask)) {
+                current = bits.get(word);
+            }
+        }
+    }
+
+    /**
+     * @return false if a document with the equality requirements definitely isn't stored
+     */
+    boolean mightContain(BsonDocument key) {
+        if (!complete) {
+            return true;
+        }
+
+        long hash1 = hash(key);
+        long hash2 = mix(hash1);
+        for (int i = 0; i < hashes; i++) {
+            long bit = Math.floorMod(hash1 + i * hash2, size);
+            if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    void complete() {
+        complete = true;
+    }
+
+    /**
+     * The 64-bit FNV-1a hash of the BSON encoding of the key.
+     */
+    private static long hash(BsonDocument key) {
+        BasicOutputBuffer buffer = new BasicOutputBuffer();
+        new BsonDocumentCodec().encode(new BsonBinaryWriter(buffer), key, EncoderContext.builder().build());
+
+        byte[] bytes = buffer.getInternalBuffer();
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < buffer.getSize(); i++) {
+            hash ^= bytes[i] & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Derives the second hash of the double hashing, the finalizer of SplitMix64.
+     */
+    private static long mix(long hash) {
+        hash = (hash ^ (hash >>> 30)) * 0xbf58476d1ce4e5b9L;
+        hash = (hash ^ (hash >>> 27)) * 0x94d049bb133111ebL;
+        return (hash ^ (hash >>> 31)) | 1;
+    }
+}
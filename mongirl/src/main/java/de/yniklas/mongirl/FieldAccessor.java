@@ -0,0 +1,419 @@
+package de.yniklas.mongirl;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+
+/**
+ * Reads and writes the value of a field without reflective access checks on every call.
+ * Accessors are backed by {@link MethodHandle}s created once per field. Fields of the types
+ * {@code int}, {@code long}, {@code double} and {@code boolean} get specialized accessors, so
+ * their values can be read and written through {@link #getInt}, {@link #setInt} etc. without boxing.
+ * The boxing {@link #get} and {@link #set} work for every field. Fields of classes with a
+ * generated {@link MongirlMapper} are accessed through the mapper instead.
+ */
+abstract class FieldAccessor {
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    final Field field;
+
+    private FieldAccessor(Field field) {
+        this.field = field;
+    }
+
+    /**
+     * Creates an accessor for the given field. The field has to be accessible for Mongirl,
+     * otherwise (and for static fields) the returned accessor falls back to {@link Field#get}
+     * and {@link Field#set}.
+     *
+     * @param field the field to access
+     * @return the accessor of the field
+     */
+    static FieldAccessor of(Field field) {
+        if (Modifier.isStatic(field.getModifiers())) {
+            return new ReflectiveAccessor(field);
+        }
+
+        MethodHandle getter;
+        MethodHandle setter;
+        try {
+            getter = LOOKUP.unreflectGetter(field);
+        } catch (IllegalAccessException e) {
+            return new ReflectiveAccessor(field);
+        }
+
+        try {
+            setter = LOOKUP.unreflectSetter(field);
+        } catch (IllegalAccessException e) {
+            // final fields which cannot be made accessible are read-only
+            setter = null;
+        }
+
+        if (field.getType() == int.class) {
+            return new IntAccessor(field, getter, setter);
+        } else if (field.getType() == long.class) {
+            return new LongAccessor(field, getter, setter);
+        } else if (field.getType() == double.class) {
+            return new DoubleAccessor(field, getter, setter);
+        } else if (field.getType() == boolean.class) {
+            return new BooleanAccessor(field, getter, setter);
+        } else {
+            return new ObjectAccessor(field, getter, setter);
+        }
+    }
+
+    /**
+     * Creates an accessor for the given field, which reads and writes it through a generated mapper.
+     *
+     * @param field the field to access
+     * @param mapper the mapper of the class declaring the field
+     * @param index the index of the field in {@link MongirlMapper#fields()}
+     * @return the accessor of the field
+     */
+    static FieldAccessor of(Field field, MongirlMapper mapper, int index) {
+        return new MapperAccessor(field, mapper, index);
+    }
+
+    abstract Object get(Object target);
+
+    abstract void set(Object target, Object value);
+
+    int getInt(Object target) {
+        return ((Number) get(target)).intValue();
+    }
+
+    void setInt(Object target, int value) {
+        set(target, value);
+    }
+
+    long getLong(Object target) {
+        return ((Number) get(target)).longValue();
+    }
+
+    void setLong(Object target, long value) {
+        set(target, value);
+    }
+
+    double getDouble(Object target) {
+        return ((Number) get(target)).doubleValue();
+    }
+
+    void setDouble(Object target, double value) {
+        set(target, value);
+    }
+
+    boolean getBoolean(Object target) {
+        return (Boolean) get(target);
+    }
+
+    void setBoolean(Object target, boolean value) {
+        set(target, value);
+    }
+
+    private static MethodHandle adapt(MethodHandle handle, MethodType type) {
+        return handle == null ? null : handle.asType(type);
+    }
+
+    private static RuntimeException rethrow(Throwable throwable) {
+        if (throwable instanceof RuntimeException) {
+            return (RuntimeException) throwable;
+        } else if (throwable instanceof Error) {
+            throw (Error) throwable;
+        }
+        return new IllegalStateException(throwable);
+    }
+
+    final IllegalStateException notWritable() {
+        return new IllegalStateException("The field " + field + " cannot be written");
+    }
+
+    private static final class ObjectAccessor extends FieldAccessor {
+        private final MethodHandle getter;
+        private final MethodHandle setter;
+
+        ObjectAccessor(Field field, MethodHandle getter, MethodHandle setter) {
+            super(field);
+            this.getter = adapt(getter, MethodType.methodType(Object.class, Object.class));
+            this.setter = adapt(setter, MethodType.methodType(void.class, Object.class, Object.class));
+        }
+
+        @Override
+        Object get(Object target) {
+            try {
+                return (Object) getter.invokeExact(target);
+            } catch (Throwable throwable) {
+                throw rethrow(throwable);
+            }
+        }
+
+        @Override
+        void set(Object target, Object value) {
+            if (setter == null) {
+                throw notWritable();
+            }
+            try {
+                setter.invokeExact(target, value);
+            } catch (Throwable throwable) {
+                throw rethrow(throwable);
+            }
+        }
+    }
+
+    private static final class IntAccessor extends FieldAccessor {
+        private final MethodHandle getter;
+        private final MethodHandle setter;
+
+        IntAccessor(Field field, MethodHandle getter, MethodHandle setter) {
+            super(field);
+            this.getter = adapt(getter, MethodType.methodType(int.class, Object.class));
+            this.setter = adapt(setter, MethodType.methodType(void.class, Object.class, int.class));
+        }
+
+        @Override
+        Object get(Object target) {
+            return getInt(target);
+        }
+
+        @Override
+        void set(Object target, Object value) {
+            setInt(target, ((Number) value).intValue());
+        }
+
+        @Override
+        int getInt(Object target) {
+            try {
+                return (int) getter.invokeExact(target);
+            } catch (Throwable throwable) {
+                throw rethrow(throwable);
+            }
+        }
+
+        @Override
+        void setInt(Object target, int value) {
+            if (setter == null) {
+                throw notWritable();
+            }
+            try {
+                setter.invokeExact(target, value);
+            } catch (Throwable throwable) {
+                throw rethrow(throwable);
+            }
+        }
+    }
+
+    private static final class LongAccessor extends FieldAccessor {
+        private final MethodHandle getter;
+        private final MethodHandle setter;
+
+        LongAccessor(Field field, MethodHandle getter, MethodHandle setter) {
+            super(field);
+            this.getter = adapt(getter, MethodType.methodType(long.class, Object.class));
+            this.setter = adapt(setter, MethodType.methodType(void.class, Object.class, long.class));
+        }
+
+        @Override
+        Object get(Object target) {
+            return getLong(target);
+        }
+
+        @Override
+        void set(Object target, Object value) {
+            setLong(target, ((Number) value).longValue());
+        }
+
+        @Override
+        long getLong(Object target) {
+            try {
+                return (long) getter.invokeExact(target);
+            } catch (Throwable throwable) {
+                throw rethrow(throwable);
+            }
+        }
+
+        @Override
+        void setLong(Object target, long value) {
+            if (setter == null) {
+                throw notWritable();
+            }
+            try {
+                setter.invokeExact(target, value);
+            } catch (Throwable throwable) {
+                throw rethrow(throwable);
+            }
+        }
+    }
+
+    private static final class DoubleAccessor extends FieldAccessor {
+        private final MethodHandle getter;
+        private final MethodHandle setter;
+
+        DoubleAccessor(Field field, MethodHandle getter, MethodHandle setter) {
+            super(field);
+            this.getter = adapt(getter, MethodType.methodType(double.class, Object.class));
+            this.setter = adapt(setter, MethodType.methodType(void.class, Object.class, double.class));
+        }
+
+        @Override
+        Object get(Object target) {
+            return getDouble(target);
+        }
+
+        @Override
+        void set(Object target, Object value) {
+            setDouble(target, ((Number) value).doubleValue());
+        }
+
+        @Override
+        double getDouble(Object target) {
+            try {
+                return (double) getter.invokeExact(target);
+            } catch (Throwable throwable) {
+                throw rethrow(throwable);
+            }
+        }
+
+        @Override
+        void setDouble(Object target, double value) {
+            if (setter == null) {
+                throw notWritable();
+            }
+            try {
+                setter.invokeExact(target, value);
+            } catch (Throwable throwable) {
+                throw rethrow(throwable);
+            }
+        }
+    }
+
+    private static final class BooleanAccessor extends FieldAccessor {
+        private final MethodHandle getter;
+        private final MethodHandle setter;
+
+        BooleanAccessor(Field field, MethodHandle getter, MethodHandle setter) {
+            super(field);
+            this.getter = adapt(getter, MethodType.methodType(boolean.class, Object.class));
+            this.setter = adapt(setter, MethodType.methodType(void.class, Object.class, boolean.class));
+        }
+
+        @Override
+        Object get(Object target) {
+            return getBoolean(target);
+        }
+
+        @Override
+        void set(Object target, Object value) {
+            setBoolean(target, (Boolean) value);
+        }
+
+        @Override
+        boolean getBoolean(Object target) {
+            try {
+                return (boolean) getter.invokeExact(target);
+            } catch (Throwable throwable) {
+                throw rethrow(throwable);
+            }
+        }
+
+        @Override
+        void setBoolean(Object target, boolean value) {
+            if (setter == null) {
+                throw notWritable();
+            }
+            try {
+                setter.invokeExact(target, value);
+            } catch (Throwable throwable) {
+                throw rethrow(throwable);
+            }
+        }
+    }
+
+    private static final class MapperAccessor extends FieldAccessor {
+        private final MongirlMapper mapper;
+        private final int index;
+
+        MapperAccessor(Field field, MongirlMapper mapper, int index) {
+            super(field);
+            this.mapper = mapper;
+            this.index = index;
+        }
+
+        @Override
+        Object get(Object target) {
+            return mapper.get(target, index);
+        }
+
+        @Override
+        void set(Object target, Object value) {
+            mapper.set(target, index, value);
+        }
+
+        @Override
+        int getInt(Object target) {
+            return mapper.getInt(target, index);
+        }
+
+        @Override
+        void setInt(Object target, int value) {
+            mapper.setInt(target, index, value);
+        }
+
+        @Override
+        long getLong(Object target) {
+            return mapper.getLong(target, index);
+        }
+
+        @Override
+        void setLong(Object target, long value) {
+            mapper.setLong(target, index, value);
+        }
+
+        @Override
+        double getDouble(Object target) {
+            return mapper.getDouble(target, index);
+        }
+
+        @Override
+        void setDouble(Object target, double value) {
+            mapper.setDouble(target, index, value);
+        }
+
+        @Override
+        boolean getBoolean(Object target) {
+            return mapper.getBoolean(target, index);
+        }
+
+        @Override
+        void setBoolean(Object target, boolean value) {
+            mapper.setBoolean(target, index, value);
+        }
+    }
+
+    /**
+     * Fallback for static fields and fields which are not accessible for Mongirl.
+     */
+    private static final class ReflectiveAccessor extends FieldAccessor {
+        ReflectiveAccessor(Field field) {
+            super(field);
+        }
+
+        @Override
+        Object get(Object target) {
+            try {
+                return field.get(target);
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        void set(Object target, Object value) {
+            try {
+                field.set(target, value);
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
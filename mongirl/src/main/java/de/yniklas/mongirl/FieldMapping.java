@@ -0,0 +1,107 @@
+package de.yniklas.mongirl;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Immutable mapping information of a single field of a class stored by Mongirl.
+ * Instances are created once per field by {@link ClassMapping} and shared across threads.
+ */
+final class FieldMapping {
+    final Field field;
+    final String name;
+    final String key;
+    final Class<?> type;
+    final FieldAccessor accessor;
+
+    /**
+     * The type of the elements if the field is an array, a {@link List} or a {@link Set}.
+     * Null if the field is no container or the element type couldn't be determined.
+     */
+    final Class<?> elementType;
+
+    final boolean stored;
+    final boolean equalityRelevant;
+    final boolean mongoPrimitive;
+
+    FieldMapping(Field field, MongirlMapper mapper) {
+        this.field = field;
+        this.field.trySetAccessible();
+        this.name = field.getName();
+        this.type = field.getType();
+        this.accessor = accessor(field, mapper);
+        this.stored = isStored(field);
+        this.key = createStoreKey(field);
+        this.equalityRelevant = stored && isEqualRelevant(field);
+        this.mongoPrimitive = Mongirl.isMongoPrimitive(type);
+        this.elementType = elementType(field);
+    }
+
+    private static FieldAccessor accessor(Field field, MongirlMapper mapper) {
+        if (mapper != null) {
+            String[] mapped = mapper.fields();
+            for (int i = 0; i < mapped.length; i++) {
+                if (mapped[i].equals(field.getName())) {
+                    return FieldAccessor.of(field, mapper, i);
+                }
+            }
+        }
+
+        return FieldAccessor.of(field);
+    }
+
+    private static boolean isStored(Field field) {
+        if (field.getAnnotation(DontStore.class) != null) {
+            return false;
+        }
+
+        return field.getAnnotation(StoreWith.class) != null
+                || field.getDeclaringClass().getAnnotation(Dataclass.class) != null;
+    }
+
+    private static boolean isEqualRelevant(Field field) {
+        StoreWith storeWith = field.getAnnotation(StoreWith.class);
+        Dataclass dataclass = field.getDeclaringClass().getAnnotation(Dataclass.class);
+
+        return (storeWith != null && storeWith.equalityRequirement())
+                || (dataclass != null && dataclass.allAttributesEqualRelevant());
+    }
+
+    private static String createStoreKey(Field field) {
+        StoreWith storeWith = field.getAnnotation(StoreWith.class);
+        if (storeWith == null || storeWith.key().equals("")) {
+            return field.getName();
+        } else {
+            return storeWith.key();
+        }
+    }
+
+    private static Class<?> elementType(Field field) {
+        if (field.getType().isArray()) {
+            return field.getType().getComponentType();
+        }
+
+        if ((field.getType() == List.class || field.getType() == Set.class)
+                && field.getGenericType() instanceof ParameterizedType) {
+            Type argument = ((ParameterizedType) field.getGenericType()).getActualTypeArguments()[0];
+            if (argument instanceof Class) {
+                return (Class<?>) argument;
+            } else if (argument instanceof ParameterizedType) {
+                return (Class<?>) ((ParameterizedType) argument).getRawType();
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return "FieldMapping{" +
+                "name='" + name + '\'' +
+                ", key='" + key + '\'' +
+                ", type=" + type.getName() +
+                '}';
+    }
+}
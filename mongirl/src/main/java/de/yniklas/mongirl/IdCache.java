@@ -0,0 +1,84 @@
+package de.yniklas.mongirl;
+
+import org.bson.BsonDocument;
+import org.bson.types.ObjectId;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Maps the equality requirements of stored objects to the ids of their documents, see
+ * {@link Mongirl#idCacheSize}. The map is filled by stores, decodes and lookups and holds at most
+ * {@code idCacheSize} ids, the least recently used one is evicted first.
+ *
+ * Mongirl never deletes documents or changes their equality requirements in place, so a cached id
+ * stays valid as long as this isn't done outside of Mongirl either.
+ */
+final class IdCache {
+    private final Mongirl mongirl;
+    private final Map<Key, ObjectId> ids;
+
+    IdCache(Mongirl mongirl) {
+        this.mongirl = mongirl;
+        this.ids = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, ObjectId> eldest) {
+                return size() > mongirl.idCacheSize;
+            }
+        });
+    }
+
+    boolean isEnabled() {
+        return mongirl.idCacheSize > 0;
+    }
+
+    /**
+     * @param key the equality requirements, see {@link WritePlan#equalityKey(Object, org.bson.codecs.configuration.CodecRegistry)}
+     * @return the cached id or null if there is none
+     */
+    ObjectId get(String collection, BsonDocument key) {
+        if (key == null || !isEnabled()) {
+            return null;
+        }
+        return ids.get(new Key(collection, key));
+    }
+
+    void put(String collection, BsonDocument key, ObjectId id) {
+        if (key != null && id != null && isEnabled()) {
+            ids.put(new Key(collection, key), id);
+        }
+    }
+
+    void clear() {
+        ids.clear();
+    }
+
+    private static final class Key {
+        final String collection;
+        final BsonDocument key;
+
+        Key(String collection, BsonDocument key) {
+            this.collection = collection;
+            this.key = key;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return collection.equals(other.collection) && key.equals(other.key);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(collection, key);
+        }
+    }
+}
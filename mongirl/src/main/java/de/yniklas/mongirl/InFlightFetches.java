@@ -0,0 +1,110 @@
+package de.yniklas.mongirl;
+
+import org.bson.types.ObjectId;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * The document fetches running in a {@link Mongirl} instance, see {@link Mongirl#coalesceFetches}.
+ * A thread fetching a document which another thread is fetching already waits for that fetch
+ * instead of querying it again, so a hot document is queried once per round trip regardless of the
+ * number of threads decoding it.
+ */
+final class InFlightFetches {
+    private final Map<Key, CompletableFuture<Object>> fetches = new ConcurrentHashMap<>();
+    private final LongAdder run = new LongAdder();
+
+    /**
+     * Fetches documents, joining the running fetches of other threads.
+     *
+     * @param collection the collection of the documents
+     * @param ids the ids of the documents
+     * @param fetch queries the documents with the given ids which no other thread is fetching
+     * @return the found documents by their ids
+     */
+    Map<ObjectId, Object> fetch(String collection, List<ObjectId> ids,
+                                Function<List<ObjectId>, Map<ObjectId, Object>> fetch) {
+        Map<ObjectId, CompletableFuture<Object>> joined = new HashMap<>();
+        Map<ObjectId, CompletableFuture<Object>> owned = new HashMap<>();
+        for (ObjectId id : ids) {
+            CompletableFuture<Object> future = new CompletableFuture<>();
+            CompletableFuture<Object> running = fetches.putIfAbsent(new Key(collection, id), future);
+            if (running == null) {
+                owned.put(id, future);
+            } else {
+                joined.put(id, running);
+            }
+        }
+
+        Map<ObjectId, Object> documents = new HashMap<>();
+        if (!owned.isEmpty()) {
+            run.increment();
+            try {
+                documents.putAll(fetch.apply(new ArrayList<>(owned.keySet())));
+                owned.forEach((id, future) -> future.complete(documents.get(id)));
+            } catch (RuntimeException exception) {
+                owned.values().forEach(future -> future.completeExceptionally(exception));
+                throw exception;
+            } finally {
+                owned.forEach((id, future) -> fetches.remove(new Key(collection, id), future));
+            }
+        }
+
+        for (Map.Entry<ObjectId, CompletableFuture<Object>> entry : joined.entrySet()) {
+            Object document;
+            try {
+                document = entry.getValue().join();
+            } catch (CompletionException exception) {
+                throw exception.getCause() instanceof RuntimeException
+                        ? (RuntimeException) exception.getCause() : exception;
+            }
+            if (document != null) {
+                documents.put(entry.getKey(), document);
+            }
+        }
+        return documents;
+    }
+
+    /**
+     * @return the number of fetches run rather than joined
+     */
+    long run() {
+        return run.sum();
+    }
+
+    private static final class Key {
+        final String collection;
+        final ObjectId id;
+
+        Key(String collection, ObjectId id) {
+            this.collection = collection;
+            this.id = id;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return collection.equals(other.collection) && id.equals(other.id);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(collection, id);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package de.yniklas.mongirl;
+
+import com.mongodb.client.model.Aggregates;
+import org.bson.conversions.Bson;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The {@code $lookup} stages joining the referenced documents of a class down to a given depth,
+ * derived from the annotations of the class. Every reference field of every level gets one stage,
+ * which adds the referenced documents as an array field named {@code _mongirlLookup<n>} to the root
+ * document. Deeper levels look up the references of the already joined documents, so the root and
+ * its whole graph (as far as it's known from the field types) come back in a single response.
+ *
+ * The stages are planned level by level and limited to {@link #MAX_STAGES}, because their number
+ * grows with the number of reference fields to the power of the depth. References of the levels
+ * left out are fetched in batches by the {@link DecodeContext}.
+ */
+final class LookupPlan {
+    static final String PREFIX = "_mongirlLookup";
+
+    /**
+     * The maximum number of {@code $lookup} stages of a plan.
+     */
+    static final int MAX_STAGES = 16;
+
+    final List<Bson> stages = new ArrayList<>();
+
+    /**
+     * The collections of the joined documents by the name of the array field holding them.
+     */
+    final Map<String, String> collections = new LinkedHashMap<>();
+
+    private LookupPlan(Class<?> rootClass, int depth) {
+        List<Join> level = List.of(new Join(rootClass, null));
+        for (int i = 0; i < depth && !level.isEmpty(); i++) {
+            level = addLookups(level);
+        }
+    }
+
+    /**
+     * Creates the lookup stages for the given class.
+     *
+     * @param rootClass the class of the root documents
+     * @param depth the number of reference levels to join
+     * @return the plan
+     */
+    static LookupPlan of(Class<?> rootClass, int depth) {
+        return new LookupPlan(rootClass, depth);
+    }
+
+    /**
+     * Adds the stages joining the references of the documents of one level.
+     *
+     * @return the documents joined by the stages, the next level
+     */
+    private List<Join> addLookups(List<Join> level) {
+        List<Join> next = new ArrayList<>();
+        for (Join join : level) {
+            for (FieldMapping fieldMapping : ClassMapping.of(join.type).storedFields) {
+                Class<?> referenced = referencedClass(fieldMapping);
+                if (referenced == null) {
+                    continue;
+                }
+                if (stages.size() == MAX_STAGES) {
+                    return List.of();
+                }
+
+                String as = PREFIX + collections.size();
+                String from = Mongirl.collection(referenced);
+                String localField = join.as == null ? fieldMapping.key : join.as + "." + fieldMapping.key;
+
+                collections.put(as, from);
+                stages.add(Aggregates.lookup(from, localField, "_id", as));
+                next.add(new Join(referenced, as));
+            }
+        }
+        return next;
+    }
+
+    /**
+     * The class of the objects referenced by a field, null if the field holds no references.
+     */
+    private static Class<?> referencedClass(FieldMapping fieldMapping) {
+        if (fieldMapping.mongoPrimitive || fieldMapping.type.isEnum()) {
+            return null;
+        }
+
+        Class<?> referenced = fieldMapping.elementType != null ? fieldMapping.elementType : fieldMapping.type;
+        if (referenced.isPrimitive() || Mongirl.collection(referenced) == null) {
+            return null;
+        }
+        return referenced;
+    }
+
+    /**
+     * Documents of a class joined as an array field, the root documents if it's null.
+     */
+    private static final class Join {
+        final Class<?> type;
+        final String as;
+
+        Join(Class<?> type, String as) {
+            this.type = type;
+            this.as = as;
+        }
+    }
+}
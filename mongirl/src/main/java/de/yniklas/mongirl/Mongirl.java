@@ -0,0 +1,1382 @@
+package de.yniklas.mongirl;
+
+import com.mongodb.MongoClientSettings;
+import com.mongodb.MongoCredential;
+import com.mongodb.MongoServerException;
+import com.mongodb.ServerAddress;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoClients;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
+import de.yniklas.mongirl.exception.MongirlDecodeException;
+import de.yniklas.mongirl.exception.MongirlStoreException;
+import org.bson.BsonBinaryReader;
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.bson.UuidRepresentation;
+import org.bson.BsonValue;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.DocumentCodec;
+import org.bson.codecs.configuration.CodecRegistries;
+import org.bson.codecs.configuration.CodecRegistry;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+
+import java.io.IOException;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.*;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Mongirl let you store Java objects to a MongoDB and decodes them for you back to Java Objects.
+ *
+ * @author yNiklas
+ */
+public class Mongirl {
+    static final CodecRegistry CODEC_REGISTRY = CodecRegistries.fromRegistries(
+            CodecRegistries.fromProviders(new MongirlCodecProvider()),
+            MongoClientSettings.getDefaultCodecRegistry());
+
+    /**
+     * The error codes of the server for a joined result exceeding the document size limit.
+     */
+    private static final int BSON_OBJECT_TOO_LARGE = 10334;
+    private static final int LOOKUP_TOO_LARGE = 4568;
+
+    private final MongoClient CLIENT;
+    private final MongoDatabase DB;
+
+    /**
+     * With RAM_MODE enabled, {@link MongirlList}s don't hold all objects in RAM.
+     * See {@link MongirlList} for more information.
+     */
+    public boolean ramMode = false;
+
+    /**
+     * With CODEC_MODE enabled, objects are encoded and decoded by the {@link MongirlCodec} of their
+     * class, registered in the clients {@code CodecRegistry}. The codecs write to and read from BSON
+     * directly instead of building a {@code Document} for every object. The stored documents are
+     * the same in both modes.
+     */
+    public boolean codecMode = false;
+
+    /**
+     * With a LOOKUP_DEPTH greater than 0, {@link #decodeTo(Class, ObjectId)} and
+     * {@link #decodeFromFilters(Class, Pair...)} fetch the object together with its references down
+     * to this depth in one aggregation with {@code $lookup} stages, built from the annotated field
+     * types. Deeper references are fetched afterwards.
+     *
+     * The joined documents are embedded into the result of the root object, which is limited to
+     * 16 MB like any document, and a plan has at most 16 {@code $lookup} stages, the deepest
+     * levels are left out first. If the joined result of an object exceeds the limit, it's
+     * decoded without joins, with batched queries per level.
+     */
+    public int lookupDepth = 0;
+
+    /**
+     * With UPSERT_MODE enabled, objects with equality requirements which no other stored object
+     * references are written with a single replace-upsert on their equality requirements instead of
+     * looking up their id first: {@link #store(Object)} needs one round trip for such an object.
+     * A unique index on the equality requirements of their collection, created on first use,
+     * prevents duplicates from concurrent writers, so the stored documents must not violate it.
+     * Objects of dataclasses with all attributes equality relevant are looked up as usual. In this
+     * mode, {@code store} returns the {@code ObjectId} of upserted objects, also if they were
+     * inserted.
+     */
+    public boolean upsertMode = false;
+
+    /**
+     * The unique indexes created in upsert mode, by collection and keys.
+     */
+    final Set<String> uniqueIndexes = ConcurrentHashMap.newKeySet();
+
+    /**
+     * The documents of the classes annotated with {@link Cached}.
+     */
+    final EntityCache entityCache = new EntityCache(this);
+
+    /**
+     * With ID_CACHE_SIZE n (n > 0), up to n ids of stored objects are kept by their equality
+     * requirements. {@link #getObjectIdFrom(Object)} and the lookups of {@link #store(Object)} take
+     * them without a query. The ids are cached by stores, decodes and {@link #preloadIds(Class)}.
+     * Only enable it if no documents are deleted and no equality requirements are changed outside
+     * of Mongirl.
+     */
+    public int idCacheSize = 0;
+
+    final IdCache idCache = new IdCache(this);
+
+    /**
+     * The existence filters by collection, see {@link #buildExistenceFilter(Class, long)}.
+     */
+    final Map<String, ExistenceFilter> existenceFilters = new ConcurrentHashMap<>();
+
+    /**
+     * With QUERY_CACHE_SIZE n (n > 0), {@link #decodeFromFilters(Class, Pair...)} caches the id of
+     * the first match of up to n filters, so repeated filters only decode the object. Mongirl's own
+     * writes to a collection invalidate its cached results, changes of other processes are seen
+     * after {@link #queryCacheExpireMillis}.
+     */
+    public int queryCacheSize = 0;
+
+    /**
+     * The time in milliseconds after which a cached result of {@link #queryCacheSize} is queried
+     * again, 0 to keep it until it's evicted or invalidated.
+     */
+    public long queryCacheExpireMillis = 0;
+
+    final QueryCache queryCache = new QueryCache(this);
+
+    /**
+     * With COALESCE_FETCHES enabled, threads decoding the same documents at the same time share one
+     * query per document: a thread fetching a document, the decoded object or a reference, which
+     * another thread is fetching already waits for that fetch. Every thread still decodes its own
+     * objects. A thread may get the document of a fetch started before its own last store.
+     */
+    public boolean coalesceFetches = false;
+
+    final InFlightFetches inFlightFetches = new InFlightFetches();
+
+    /**
+     * The loaded snapshot, null if there is none or it is caught up, see {@link #loadSnapshot(Path)}.
+     */
+    private volatile Snapshot snapshot;
+
+    /**
+     * Creates a {@code Mongirl} instance without any credentials or authentication.
+     *
+     * @param host the host address of the database
+     * @param port the port of the database
+     * @param dbName the name of the database
+     */
+    public Mongirl(String host, int port, String dbName) {
+        MongoClientSettings settings = MongoClientSettings.builder()
+                .applyToClusterSettings(builder -> builder.hosts(Collections.singletonList(
+                        new ServerAddress(host, port)
+                )))
+                .uuidRepresentation(UuidRepresentation.STANDARD)
+                .codecRegistry(CODEC_REGISTRY)
+                .build();
+
+        CLIENT = MongoClients.create(settings);
+        DB = CLIENT.getDatabase(dbName);
+    }
+
+    /**
+     * Create a {@code Mongirl} instance with credentials for the target database.
+     *
+     * @param host the host address of the database
+     * @param port the port of the database
+     * @param dbName the name of the database
+     * @param username the credentials username to authenticate the database connection
+     * @param authDB the database auth
+     * @param password the credentials password to authenticate the database connection
+     */
+    public Mongirl(String host, int port, String dbName, String username, String authDB, char[] password) {
+        MongoCredential credential = MongoCredential.createCredential(username, authDB, password);
+
+        MongoClientSettings settings = MongoClientSettings.builder()
+                .credential(credential)
+                .applyToClusterSettings(builder -> builder.hosts(Collections.singletonList(
+                        new ServerAddress(host, port)
+                )))
+                .uuidRepresentation(UuidRepresentation.STANDARD)
+                .codecRegistry(CODEC_REGISTRY)
+                .build();
+
+
+        CLIENT = MongoClients.create(settings);
+        DB = CLIENT.getDatabase(dbName);
+    }
+
+    /**
+     * Stores the given object to the database.
+     * An attribute of the object will be stored iff
+     *
+     * <ul>
+     *     <li>The attribute is annotated with {@link StoreWith}</li>
+     *     <li>The class to the object is annotated with {@link Store}</li>
+     *     <li>The attribute isn't annotated with {@link DontStore}</li>
+     * </ul>
+     * or
+     * <ul>
+     *     <li>The class to the object is annotated with {@link Dataclass}</li>
+     *     <li>The attribute isn't annotated with {@link DontStore}</li>
+     * </ul>
+     *
+     * @param storageObject the object to store
+     * @return the ObjectId of the stored object or the inserted Id
+     */
+    public Object store(Object storageObject) {
+        Object stored;
+
+        try {
+            WritePlan plan = new WritePlan(this);
+            WritePlan.Entry entry = plan.add(storageObject);
+            plan.execute();
+            stored = WritePlan.idOf(entry);
+        } catch (Exception exception) {
+            throw new MongirlStoreException(exception.getMessage());
+        }
+
+        return stored;
+    }
+
+    /**
+     * Stores many objects, see {@link #store(Object)}. The objects are read in batches of
+     * {@code batchSize}, encoded by {@code threads} worker threads and written with one unordered
+     * bulk write per collection and batch. Only a few batches are held in memory at once, the
+     * input isn't read further until they are written.
+     *
+     * A failing object doesn't stop the others, its failure is part of the result. The result holds
+     * the id of every object, so it grows with the input.
+     *
+     * @param objects the objects to store
+     * @param batchSize the maximum number of objects written at once
+     * @param threads the number of threads encoding the batches
+     * @return the ids of the stored objects in the order of the input and the failures
+     */
+    public StoreAllResult storeAll(Iterator<?> objects, int batchSize, int threads) {
+        return new StorePipeline(this, batchSize, threads).run(objects);
+    }
+
+    /**
+     * Stores many objects in batches of 1000 with a worker thread per processor, see
+     * {@link #storeAll(Iterator, int, int)}.
+     *
+     * @param objects the objects to store
+     * @return the ids of the stored objects in the order of the input and the failures
+     */
+    public StoreAllResult storeAll(Iterator<?> objects) {
+        return storeAll(objects, DecodeContext.BATCH_SIZE, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Stores many objects, see {@link #storeAll(Iterator)}.
+     *
+     * @param objects the objects to store
+     * @return the ids of the stored objects in the order of the input and the failures
+     */
+    public StoreAllResult storeAll(Iterable<?> objects) {
+        return storeAll(objects.iterator());
+    }
+
+    /**
+     * Stores many objects, see {@link #storeAll(Iterator)}. The stream is consumed sequentially.
+     *
+     * @param objects the objects to store
+     * @return the ids of the stored objects in the order of the input and the failures
+     */
+    public StoreAllResult storeAll(Stream<?> objects) {
+        return storeAll(objects.iterator());
+    }
+
+    /**
+     * Builds a Bloom filter over the equality requirements of all stored objects of a class with a
+     * scan of its collection. Afterwards, {@link #getObjectIdFrom(Object)}, {@link #store(Object)}
+     * and {@link #decodeFromFilters(Class, Pair...)} skip the query for objects which definitely
+     * aren't stored. Objects stored by this instance are added to the filter, so it must only be
+     * built if no other process or instance stores objects of the class. Building it again, e.g.
+     * with a larger expected number, replaces the filter.
+     *
+     * @param targetClass the class of the objects
+     * @param expectedObjects the expected number of stored objects, more objects raise the false
+     *                        positive rate of about 1%
+     */
+    public void buildExistenceFilter(Class<?> targetClass, long expectedObjects) {
+        String collection = collection(targetClass);
+        List<String> fields = ClassMapping.of(targetClass).equalityKeys;
+        if (collection == null || fields.isEmpty()) {
+            return;
+        }
+
+        // Registered before the scan, so objects stored meanwhile are added too
+        ExistenceFilter filter = new ExistenceFilter(expectedObjects);
+        ExistenceFilter previous = existenceFilters.put(collection, filter);
+
+        List<String> projection = new ArrayList<>(fields);
+        projection.add("_id");
+        try {
+            for (BsonDocument document : DB.getCollection(collection, BsonDocument.class)
+                    .find().projection(Projections.include(projection))) {
+                filter.add(WritePlan.keyOf(document, fields));
+            }
+        } catch (RuntimeException exception) {
+            existenceFilters.remove(collection, filter);
+            throw exception;
+        }
+        filter.complete();
+    }
+
+    /**
+     * @return false if the existence filter of the collection rules the equality requirements out
+     */
+    boolean mightBeStored(String collection, BsonDocument key) {
+        ExistenceFilter filter = key == null ? null : existenceFilters.get(collection);
+        return filter == null || filter.mightContain(key);
+    }
+
+    /**
+     * Adds stored or seen equality requirements to the existence filter of the collection.
+     */
+    void addExisting(String collection, BsonDocument key) {
+        ExistenceFilter filter = key == null ? null : existenceFilters.get(collection);
+        if (filter != null) {
+            filter.add(key);
+        }
+    }
+
+    /**
+     * Adds the equality requirements of a fetched document to the id cache and the existence filter.
+     *
+     * @param object the object decoded from the document
+     * @param document the document, a {@code Document} or a {@code RawBsonDocument}
+     */
+    void seen(String collection, Object object, ObjectId id, Object document) {
+        if (object == null || (!idCache.isEnabled() && !existenceFilters.containsKey(collection))) {
+            return;
+        }
+
+        List<String> fields = ClassMapping.of(object.getClass()).equalityKeys;
+        if (!fields.isEmpty()) {
+            BsonDocument key = WritePlan.keyOf(bsonOf(document), fields);
+            idCache.put(collection, key, id);
+            addExisting(collection, key);
+        }
+    }
+
+    /**
+     * Returns the counters of the document cache of the classes annotated with {@link Cached}.
+     *
+     * @return the hits, misses and evictions of the cache
+     */
+    public CacheStats getCacheStats() {
+        return entityCache.stats();
+    }
+
+    /**
+     * Enables a cache tier for the fetched documents of all classes outside of the heap, behind
+     * the caches of the {@link Cached} classes. Decodes take the documents from it before querying
+     * them, {@link #store(Object)} invalidates them like the ones of {@link Cached} classes. The
+     * documents are kept as raw BSON in direct buffers of 1 MB to 64 MB, at least 8 of them unless
+     * the capacity is smaller, so the JVM needs a {@code -XX:MaxDirectMemorySize} of at least the
+     * capacity. When the capacity is reached, the buffers are reused with the clock algorithm.
+     *
+     * @param capacityBytes the maximum size of the tier in bytes, 0 to disable it
+     */
+    public void enableOffHeapCache(long capacityBytes) {
+        entityCache.enableOffHeap(capacityBytes);
+    }
+
+    /**
+     * Returns the counters of the off-heap cache tier, see {@link #enableOffHeapCache(long)}.
+     *
+     * @return the hits, misses and evicted documents of the tier, null if it isn't enabled
+     */
+    public CacheStats getOffHeapCacheStats() {
+        return entityCache.offHeapStats();
+    }
+
+    /**
+     * Writes the documents of the collections of the given classes to a local snapshot file, see
+     * {@link #loadSnapshot(Path)}. An existing file is replaced when the new one is complete.
+     *
+     * @param file the snapshot file
+     * @param classes the classes whose collections are written
+     */
+    public void writeSnapshot(Path file, Class<?>... classes) {
+        Set<String> collections = new LinkedHashSet<>();
+        for (Class<?> clazz : classes) {
+            if (collection(clazz) != null) {
+                collections.add(collection(clazz));
+            }
+        }
+
+        try {
+            Snapshot.write(this, file, collections);
+        } catch (IOException exception) {
+            throw new MongirlStoreException(String.format(MongirlStoreException.SNAPSHOT, file, exception.getMessage()));
+        }
+    }
+
+    /**
+     * Maps a snapshot file written by {@link #writeSnapshot(Path, Class[])} into memory. Until it
+     * is caught up, the decodes read the documents of its collections from the file instead of the
+     * database: {@code decodeAll} without lookup mode reads the whole collection, the other decodes
+     * documents by id. Documents missing in the snapshot are fetched from the database. A
+     * collection written to by this instance is read from the database again.
+     *
+     * The snapshot is caught up in the background: its collections are written to the file again
+     * from the database, afterwards all reads go to the database and the file is ready for the next
+     * start.
+     *
+     * @param file the snapshot file
+     * @return a future completed when the snapshot is caught up
+     */
+    public CompletableFuture<Void> loadSnapshot(Path file) {
+        return loadSnapshot(file, task -> {
+            Thread catchUp = new Thread(task, "mongirl-snapshot");
+            catchUp.setDaemon(true);
+            catchUp.start();
+        });
+    }
+
+    /**
+     * Maps a snapshot file into memory and catches it up with the given executor, see
+     * {@link #loadSnapshot(Path)}.
+     *
+     * @param file the snapshot file
+     * @param catchUpExecutor runs the catch up
+     * @return a future completed when the snapshot is caught up
+     */
+    public CompletableFuture<Void> loadSnapshot(Path file, Executor catchUpExecutor) {
+        Snapshot loaded;
+        try {
+            loaded = Snapshot.load(file);
+        } catch (IOException exception) {
+            throw new MongirlDecodeException(String.format(MongirlDecodeException.SNAPSHOT, file, exception.getMessage()));
+        }
+        snapshot = loaded;
+
+        CompletableFuture<Void> caughtUp = new CompletableFuture<>();
+        catchUpExecutor.execute(() -> {
+            try {
+                Snapshot.write(this, file, loaded.collections());
+                caughtUp.complete(null);
+            } catch (IOException | RuntimeException exception) {
+                caughtUp.completeExceptionally(new MongirlStoreException(
+                        String.format(MongirlStoreException.SNAPSHOT, file, exception.getMessage())));
+            } finally {
+                if (snapshot == loaded) {
+                    snapshot = null;
+                }
+            }
+        });
+        return caughtUp;
+    }
+
+    /**
+     * Returns a document of the loaded snapshot, a {@code ByteBuffer} in codec mode and a
+     * {@code Document} otherwise.
+     *
+     * @return the document or null if it isn't in a loaded snapshot
+     */
+    Object snapshotDocument(String collection, ObjectId id) {
+        Snapshot loaded = snapshot;
+        return loaded == null ? null : loaded.get(collection, id, codecMode ? null : new DocumentCodec(DB.getCodecRegistry()));
+    }
+
+    /**
+     * Reads a collection from the database from now on, as it was written to.
+     */
+    void retireSnapshot(String collection) {
+        Snapshot loaded = snapshot;
+        if (loaded != null) {
+            loaded.retire(collection);
+        }
+    }
+
+    /**
+     * Removes all documents, ids and query results from the caches, e.g. after the database was changed without
+     * Mongirl.
+     */
+    public void invalidateCache() {
+        entityCache.invalidateAll();
+        idCache.clear();
+        queryCache.clear();
+    }
+
+    /**
+     * Opens a session whose decodes share one identity map and whose stores are written together,
+     * see {@link MongirlSession}.
+     *
+     * @return the new session
+     */
+    public MongirlSession openSession() {
+        return new MongirlSession(this);
+    }
+
+    /**
+     * Opens a write-behind buffer with batches of 1000 objects, a flush interval of one second and
+     * a capacity of 10000 objects, see {@link #writeBehind(int, long, int)}.
+     *
+     * @return the new buffer
+     */
+    public MongirlWriteBehind writeBehind() {
+        return writeBehind(1000, 1000, 10_000);
+    }
+
+    /**
+     * Opens a write-behind buffer whose stores return before the objects are written, see
+     * {@link MongirlWriteBehind}. Stores of the same document before the next flush are written
+     * once. The buffer is flushed in the background when it holds a batch or after the flush
+     * interval, and on close.
+     *
+     * @param batchSize the number of buffered objects which are flushed immediately
+     * @param flushIntervalMillis the time between the background flushes
+     * @param capacity the maximum number of buffered objects, stores block while it is reached
+     * @return the new buffer
+     */
+    public MongirlWriteBehind writeBehind(int batchSize, long flushIntervalMillis, int capacity) {
+        return new MongirlWriteBehind(this, batchSize, flushIntervalMillis, capacity);
+    }
+
+    /**
+     * Evaluates whether an object is stored based on its equal relevant attributes and, if so,
+     * returns its {@code ObjectId}.
+     *
+     * @param storageObject the object to get the {@code ObjectId} from
+     * @return the objects {@code ObjectId} if exists
+     */
+    public ObjectId getObjectIdFrom(Object storageObject) {
+        // Collect all fields important for the equality check
+        Set<Bson> equalityRequirements = createEqualityRequirementsSet(storageObject);
+
+        if (equalityRequirements.size() == 0) {
+            return null;
+        }
+
+        if (collection(storageObject.getClass()) == null) {
+            return null;
+        }
+
+        String collectionName = collection(storageObject.getClass());
+        boolean deterministicId = ClassMapping.of(storageObject.getClass()).deterministicId;
+        BsonDocument key = idCache.isEnabled() || deterministicId || existenceFilters.containsKey(collectionName)
+                ? WritePlan.equalityKey(storageObject, DB.getCodecRegistry()) : null;
+        ObjectId cached = idCache.get(collectionName, key);
+        if (cached != null) {
+            return cached;
+        }
+        if (!mightBeStored(collectionName, key)) {
+            return null;
+        }
+
+        // Only the id is fetched, an index on the equality requirements answers the query alone.
+        // A derived id only has to be checked for existence.
+        MongoCollection<Document> collection = DB.getCollection(collectionName);
+        Bson filter = deterministicId ? Filters.eq("_id", WritePlan.deterministicId(collectionName, key)) : Filters.and(equalityRequirements);
+        Document foundDoc = collection.find(filter).projection(Projections.include("_id")).first();
+        if (foundDoc == null) {
+            return null;
+        }
+
+        idCache.put(collectionName, key, foundDoc.getObjectId("_id"));
+        return foundDoc.getObjectId("_id");
+    }
+
+    /**
+     * Fills the id cache with the ids of all stored objects of a class, see {@link #idCacheSize}.
+     * Only the ids and equality requirements of the documents are fetched.
+     *
+     * @param targetClass the class of the objects
+     */
+    public void preloadIds(Class<?> targetClass) {
+        List<String> fields = ClassMapping.of(targetClass).equalityKeys;
+        if (collection(targetClass) == null || fields.isEmpty() || !idCache.isEnabled()) {
+            return;
+        }
+
+        List<String> projection = new ArrayList<>(fields);
+        projection.add("_id");
+        for (BsonDocument document : DB.getCollection(collection(targetClass), BsonDocument.class)
+                .find().projection(Projections.include(projection))) {
+            idCache.put(collection(targetClass), WritePlan.keyOf(document, fields), document.getObjectId("_id").getValue());
+        }
+    }
+
+    /**
+     * Decodes a database stored object based on given filters and the class of the to be decoded
+     * object.
+     *
+     * @param targetClass the {@code Class} of the decoded object
+     * @param pairs the search parameters given as {@link Pair}
+     * @param <T> the type of the decoded object
+     * @return the decoded, first result of the database search with the given {@code pairs} or
+     *         null if there was no search results
+     */
+    public <T> T decodeFromFilters(Class<T> targetClass, Pair... pairs) {
+        if (collection(targetClass) == null) {
+            return null;
+        }
+
+        if (pairs.length == 0) {
+            return decodeAll(targetClass).get(0);
+        }
+
+        Bson filter = createFilter(pairs);
+        if (filter == null || !mightBeStored(collection(targetClass), equalityKeyOf(targetClass, pairs))) {
+            return null;
+        }
+
+        if (queryCache.isEnabled()) {
+            return decodeCached(targetClass, filter);
+        }
+
+        if (lookupDepth > 0) {
+            List<T> joined = decodeJoined(targetClass, filter, 1, Set.of());
+            if (joined != null) {
+                return joined.isEmpty() ? null : joined.get(0);
+            }
+        }
+
+        Document foundDocument = DB.getCollection(collection(targetClass)).find(filter).first();
+        if (foundDocument == null) {
+            return null;
+        }
+
+        return decodeTo(targetClass, foundDocument.getObjectId("_id"));
+    }
+
+    /**
+     * Decodes the first object matching a filter with the query cache, see {@link #queryCacheSize}.
+     */
+    private <T> T decodeCached(Class<T> targetClass, Bson filter) {
+        String collection = collection(targetClass);
+        BsonDocument rendered = filter.toBsonDocument(BsonDocument.class, DB.getCodecRegistry());
+        Object cached = queryCache.get(collection, rendered);
+        if (cached == QueryCache.NONE) {
+            return null;
+        }
+        if (cached != null) {
+            return decodeTo(targetClass, (ObjectId) cached);
+        }
+
+        long version = queryCache.version(collection);
+        Document foundDocument = DB.getCollection(collection).find(filter).projection(Projections.include("_id")).first();
+        ObjectId id = foundDocument == null ? null : foundDocument.getObjectId("_id");
+        queryCache.put(collection, rendered, id, version);
+        return id == null ? null : decodeTo(targetClass, id);
+    }
+
+    /**
+     * Creates a lazy iterator over the stored objects of a given type, optionally filtered. The
+     * objects are decoded while the underlying cursor advances, {@code batchSize} documents at once,
+     * so only the current batch is held in memory. Objects referenced from several batches are
+     * decoded once per batch. The iterator has to be closed to release the cursor.
+     *
+     * @param targetClass the {@code Class} of the objects to decode
+     * @param batchSize the number of documents fetched and decoded at once
+     * @param pairs the search parameters given as {@link Pair}, none for all objects
+     * @param <T> the type of the decoded objects
+     * @return the iterator over the decoded objects
+     */
+    public <T> MongirlCursor<T> iterate(Class<T> targetClass, int batchSize, Pair... pairs) {
+        if (collection(targetClass) == null) {
+            return new MongirlCursor<>(this, targetClass, null, batchSize);
+        }
+
+        Bson filter = pairs.length == 0 ? new Document() : createFilter(pairs);
+        if (filter == null) {
+            return new MongirlCursor<>(this, targetClass, null, batchSize);
+        }
+
+        return new MongirlCursor<>(this, targetClass, find(targetClass, filter).batchSize(batchSize).iterator(), batchSize);
+    }
+
+    /**
+     * Streams the stored objects of a given type, see {@link #iterate(Class, int, Pair...)}.
+     * Closing the stream closes the underlying cursor.
+     *
+     * @param targetClass the {@code Class} of the objects to decode
+     * @param batchSize the number of documents fetched and decoded at once
+     * @param pairs the search parameters given as {@link Pair}, none for all objects
+     * @param <T> the type of the decoded objects
+     * @return the stream of decoded objects
+     */
+    public <T> Stream<T> stream(Class<T> targetClass, int batchSize, Pair... pairs) {
+        MongirlCursor<T> cursor = iterate(targetClass, batchSize, pairs);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(cursor, Spliterator.ORDERED), false)
+                .onClose(cursor::close);
+    }
+
+    /**
+     * Streams all stored objects of a given type in parallel. The collection is split into
+     * {@code _id} ranges, each range is read by its own cursor and decoded by the thread processing
+     * it. Like every parallel stream, it runs in the common {@code ForkJoinPool} or in the pool the
+     * terminal operation is called from, see {@link #parallelForEach}. The stream is unordered.
+     * Closing the stream closes all cursors.
+     *
+     * @param targetClass the {@code Class} of the objects to decode
+     * @param batchSize the number of documents fetched and decoded at once, ranges are split down
+     *                  to about this size
+     * @param <T> the type of the decoded objects
+     * @return the parallel stream of decoded objects
+     */
+    public <T> Stream<T> parallelStream(Class<T> targetClass, int batchSize) {
+        return parallelStream(targetClass, batchSize, Set.of());
+    }
+
+    /**
+     * Streams the stored objects of a given type in parallel, see {@link #parallelStream(Class, int)}.
+     *
+     * @param excluded the ids of the objects to leave out
+     */
+    <T> Stream<T> parallelStream(Class<T> targetClass, int batchSize, Set<ObjectId> excluded) {
+        Queue<MongirlCursor<?>> cursors = new ConcurrentLinkedQueue<>();
+        return StreamSupport.stream(PartitionSpliterator.of(this, targetClass, batchSize, excluded, cursors), true)
+                .onClose(() -> cursors.forEach(MongirlCursor::close));
+    }
+
+    /**
+     * Decodes all stored objects of a given type in parallel, see {@link #parallelStream}, and
+     * passes them to the action. The partitions are processed by the threads of the given pool.
+     *
+     * @param targetClass the {@code Class} of the objects to decode
+     * @param batchSize the number of documents fetched and decoded at once
+     * @param pool the pool to process the partitions
+     * @param action the action to perform for every object, called concurrently
+     * @param <T> the type of the decoded objects
+     */
+    public <T> void parallelForEach(Class<T> targetClass, int batchSize, ForkJoinPool pool, Consumer<? super T> action) {
+        try (Stream<T> stream = parallelStream(targetClass, batchSize)) {
+            pool.submit(() -> stream.forEach(action)).join();
+        }
+    }
+
+    /**
+     * Creates a spliterator over all stored objects of a given type for parallel streams,
+     * see {@link #parallelStream}.
+     */
+    <T> Spliterator<T> spliterator(Class<T> targetClass, int batchSize, Set<ObjectId> excluded) {
+        return PartitionSpliterator.of(this, targetClass, batchSize, excluded, new ConcurrentLinkedQueue<>());
+    }
+
+    /**
+     * Creates a lazy iterator over the stored objects of a given type matching a filter.
+     */
+    <T> MongirlCursor<T> iterate(Class<T> targetClass, Bson filter, int batchSize, Set<ObjectId> excluded) {
+        return new MongirlCursor<>(this, targetClass, find(targetClass, filter).batchSize(batchSize).iterator(), batchSize, excluded);
+    }
+
+    /**
+     * Streams all stored objects of a given type, see {@link #stream(Class, int, Pair...)}.
+     *
+     * @param targetClass the {@code Class} of the objects to decode
+     * @param <T> the type of the decoded objects
+     * @return the stream of decoded objects
+     */
+    public <T> Stream<T> stream(Class<T> targetClass) {
+        return stream(targetClass, DecodeContext.BATCH_SIZE);
+    }
+
+    /**
+     * Decodes all objects of a given type stored in the database.
+     *
+     * @param targetClass the {@code Class} of the objects to decode
+     * @param <T> the type of the decoded objects
+     * @return a {@link List} with all decoded objects
+     */
+    public <T> List<T> decodeAll(Class<T> targetClass) {
+        return decodeAll(targetClass, List.of());
+    }
+
+    /**
+     * Decodes all objects of a given type stored in the database, except the blacklisted ones.
+     * The objects are decoded from the documents of one cursor, their references are fetched
+     * in batches.
+     *
+     * @param targetClass the {@code Class} of the objects to decode
+     * @param blackList the ids of the objects to leave out
+     * @param <T> the type of the decoded objects
+     * @return a {@link List} with all decoded objects
+     */
+    public <T> List<T> decodeAll(Class<T> targetClass, Collection<ObjectId> blackList) {
+        if (collection(targetClass) == null) {
+            return null;
+        }
+
+        // Small blacklists are applied by the server, large ones locally to keep the query small
+        Bson filter = new Document();
+        Set<ObjectId> excluded = Set.of();
+        if (blackList.size() > DecodeContext.BATCH_SIZE) {
+            excluded = new HashSet<>(blackList);
+        } else if (!blackList.isEmpty()) {
+            filter = Filters.nin("_id", blackList);
+        }
+
+        if (lookupDepth > 0) {
+            List<T> joined = decodeJoined(targetClass, filter, 0, excluded);
+            if (joined != null) {
+                return joined;
+            }
+        }
+
+        DecodeContext context = new DecodeContext(this);
+        List<T> decodedObjects = new ArrayList<>();
+        Map<ObjectId, Object> documents = new LinkedHashMap<>();
+
+        Snapshot loaded = snapshot;
+        if (loaded != null && loaded.serves(collection(targetClass))) {
+            Set<ObjectId> blacklisted = new HashSet<>(blackList);
+            loaded.documents(collection(targetClass), codecMode ? null : new DocumentCodec(DB.getCodecRegistry()))
+                    .forEach((id, document) -> {
+                        if (!blacklisted.contains(id)) {
+                            documents.put(id, document);
+                        }
+                    });
+            return context.decode(targetClass, documents);
+        }
+
+        for (Object document : find(targetClass, filter)) {
+            ObjectId id = DecodeContext.idOf(document);
+            if (excluded.contains(id)) {
+                continue;
+            }
+
+            documents.put(id, document);
+            if (documents.size() == DecodeContext.BATCH_SIZE) {
+                decodedObjects.addAll(context.decode(targetClass, documents));
+                documents.clear();
+            }
+        }
+        decodedObjects.addAll(context.decode(targetClass, documents));
+
+        return decodedObjects;
+    }
+
+    /**
+     * Decodes an object stored in the database with the given {@code ObjectId}.
+     *
+     * @param targetClass the {@code Class} of the decoded object
+     * @param _id the {@code ObjectId} of the database document to decode
+     * @param <T> the type of the decoded object
+     * @return the decoded object or null if the decode fail
+     */
+    public <T> T decodeTo(Class<T> targetClass, ObjectId _id) {
+        if (lookupDepth > 0 && collection(targetClass) != null) {
+            List<T> joined = decodeJoined(targetClass, Filters.eq("_id", _id), 1, Set.of());
+            if (joined != null) {
+                return joined.isEmpty() ? null : joined.get(0);
+            }
+        }
+
+        return new DecodeContext(this).decode(targetClass, _id);
+    }
+
+    /**
+     * Decodes the objects stored in the database with the given {@code ObjectId}s. The objects are
+     * fetched with one query per 1000 ids and share their references.
+     *
+     * @param targetClass the {@code Class} of the decoded objects
+     * @param ids the {@code ObjectId}s of the database documents to decode
+     * @param <T> the type of the decoded objects
+     * @return the decoded objects in the order of the given ids, null for ids without a document
+     */
+    public <T> List<T> decodeMany(Class<T> targetClass, Collection<ObjectId> ids) {
+        return new DecodeContext(this).decodeAll(targetClass, ids);
+    }
+
+    /**
+     * Evaluates whether two objects are equal for Mongirl.
+     * More precious, whether all equality requirement fields are equal.
+     * areMongoEqual(null, null) will return true.
+     *
+     * @param a the first comparison object
+     * @param b the second comparison object
+     * @return whether both are equal for Mongirl
+     */
+    public static boolean areMongoEqual(Object a, Object b) {
+        if (a == null) {
+            return b == null;
+        } else if (a.equals(b)) {
+            return true;
+        } else if (b == null) {
+            return false;
+        }
+
+        ClassMapping mappingA = ClassMapping.of(a.getClass());
+        ClassMapping mappingB = ClassMapping.of(b.getClass());
+
+        if (mappingA.fieldCount != mappingB.fieldCount) {
+            return false;
+        }
+
+        for (FieldMapping fieldMapping : mappingA.equalityFields) {
+            try {
+                Object valueA = fieldMapping.accessor.get(a);
+                Object valueB = fieldMapping.accessor.get(b);
+
+                if ((valueA == null && valueB != null) || (valueA != null && valueB == null)) {
+                    return false;
+                }
+
+                if (valueA != null) {
+                    if (!valueA.equals(valueB)) {
+                        return false;
+                    }
+                }
+            } catch (IllegalArgumentException | ClassCastException e) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Creates the document of an object without {@code _id}.
+     *
+     * @param references resolves the {@code ObjectId}s of referenced objects
+     */
+    Document createDocumentOf(Object storageObject, MongirlCodec.ReferenceEncoder references) {
+        Document document = new Document();
+
+        ClassMapping mapping = ClassMapping.of(storageObject.getClass());
+        for (FieldMapping fieldMapping : mapping.storedFields) {
+            Object value = fieldMapping.accessor.get(storageObject);
+
+            if (value == null) {
+                document.append(fieldMapping.key, null);
+            } else if (isMongoPrimitive(value.getClass())) {
+                document.append(fieldMapping.key, value);
+            } else if (fieldMapping.type.isEnum()) {
+                document.append(fieldMapping.key, value.toString());
+            } else if (value instanceof Iterable) {
+                if (value instanceof List) {
+                    List<Object> encoded = new ArrayList<>();
+                    ((List<?>) value).forEach(item -> {
+                        if (isMongoPrimitive(item.getClass())) {
+                            encoded.add(item);
+                        } else {
+                            encoded.add(references.encodeReference(fieldMapping.key, item, true));
+                        }
+                    });
+                    document.append(fieldMapping.key, encoded);
+                } else if (value instanceof Set) {
+                    Set<Object> encoded = new HashSet<>();
+                    ((Set<?>) value).forEach(item -> {
+                        if (isMongoPrimitive(item.getClass())) {
+                            encoded.add(item);
+                        } else {
+                            encoded.add(references.encodeReference(fieldMapping.key, item, true));
+                        }
+                    });
+                    document.append(fieldMapping.key, encoded);
+                }
+            } else if (fieldMapping.type.isArray()) {
+                int length = Array.getLength(value);
+                List<Object> encoded = new ArrayList<>(length);
+                for (int i = 0; i < length; i++) {
+                    Object item = Array.get(value, i);
+                    if (item == null) {
+                        encoded.add(null);
+                    } else if (isMongoPrimitive(item.getClass())) {
+                        encoded.add(item);
+                    } else {
+                        encoded.add(references.encodeReference(fieldMapping.key, item, true));
+                    }
+                }
+                document.append(fieldMapping.key, encoded);
+            } else {
+                document.append(fieldMapping.key, references.encodeReference(fieldMapping.key, value, false));
+            }
+        }
+
+        // Store the classpath if annotated so or the class has a concrete super class or
+        // implements an interface
+        if (mapping.addClasspath) {
+            document.append("classpath", storageObject.getClass().getName());
+        }
+
+        return document;
+    }
+
+    /**
+     * Decodes the objects matching a filter with a single aggregation, which joins their references
+     * down to {@link #lookupDepth} with {@code $lookup} stages.
+     *
+     * @param limit the maximum number of objects, 0 for no limit
+     * @param excluded ids of matching objects to leave out
+     * @return the decoded objects or null if a joined result exceeds the document size limit
+     */
+    private <T> List<T> decodeJoined(Class<T> targetClass, Bson filter, int limit, Set<ObjectId> excluded) {
+        LookupPlan plan = LookupPlan.of(targetClass, lookupDepth);
+
+        List<Bson> pipeline = new ArrayList<>();
+        pipeline.add(Aggregates.match(filter));
+        if (limit > 0) {
+            pipeline.add(Aggregates.limit(limit));
+        }
+        pipeline.addAll(plan.stages);
+
+        DecodeContext context = new DecodeContext(this);
+        Map<ObjectId, Object> roots = new LinkedHashMap<>();
+
+        try {
+            if (codecMode) {
+                for (RawBsonDocument root : DB.getCollection(collection(targetClass), RawBsonDocument.class).aggregate(pipeline)) {
+                    if (excluded.contains(DecodeContext.idOf(root))) {
+                        continue;
+                    }
+                    plan.collections.forEach((joinedAs, joinedCollection) -> {
+                        for (BsonValue joined : root.getArray(joinedAs)) {
+                            RawBsonDocument document = (RawBsonDocument) joined;
+                            context.prefetch(joinedCollection, document.getObjectId("_id").getValue(), document);
+                        }
+                    });
+                    roots.put(DecodeContext.idOf(root), root);
+                }
+            } else {
+                for (Document root : DB.getCollection(collection(targetClass)).aggregate(pipeline)) {
+                    if (excluded.contains(DecodeContext.idOf(root))) {
+                        continue;
+                    }
+                    plan.collections.forEach((joinedAs, joinedCollection) -> {
+                        for (Document document : root.getList(joinedAs, Document.class)) {
+                            context.prefetch(joinedCollection, document.getObjectId("_id"), document);
+                        }
+                        root.remove(joinedAs);
+                    });
+                    roots.put(DecodeContext.idOf(root), root);
+                }
+            }
+        } catch (MongoServerException exception) {
+            if (exception.getCode() == BSON_OBJECT_TOO_LARGE || exception.getCode() == LOOKUP_TOO_LARGE) {
+                return null;
+            }
+            throw exception;
+        }
+
+        return context.decode(targetClass, roots);
+    }
+
+    /**
+     * Finds the documents of a class, as {@link RawBsonDocument}s in codec mode.
+     */
+    FindIterable<? extends Bson> find(Class<?> targetClass, Bson filter) {
+        if (codecMode) {
+            return DB.getCollection(collection(targetClass), RawBsonDocument.class).find(filter);
+        }
+        return DB.getCollection(collection(targetClass)).find(filter);
+    }
+
+    /**
+     * Creates an object from its document. References are registered in the context and
+     * assigned when the context resolves them.
+     *
+     * @param targetClass the class of the object, the classpath of the document takes precedence
+     * @param document the document, a {@link RawBsonDocument} is decoded by the codec of the class
+     * @param context the context of the decode operation
+     * @return the created object or null if it couldn't be instantiated
+     */
+    static <T> T create(Class<T> targetClass, Object document, DecodeContext context) {
+        if (document instanceof RawBsonDocument) {
+            return codec(targetClass).decode(((RawBsonDocument) document).asBsonReader(), context);
+        }
+        if (document instanceof ByteBuffer) {
+            // A document of a snapshot, read from the mapped file
+            return codec(targetClass).decode(new BsonBinaryReader(((ByteBuffer) document).duplicate()), context);
+        }
+        return create(targetClass, (Document) document, context);
+    }
+
+    private static <T> T create(Class<T> targetClass, Document document, DecodeContext context) {
+        Class<T> realClass = targetClass;
+        try {
+            if (document.get("classpath") != null) {
+                realClass = (Class<T>) ClassMapping.forClasspath((String) document.get("classpath"));
+            }
+
+            ClassMapping mapping = ClassMapping.of(realClass);
+            T emptyInstance = (T) mapping.newInstance();
+
+            // Reflect all stored attributes
+            for (FieldMapping fieldMapping : mapping.storedFields) {
+                defineFieldValue(document, emptyInstance, fieldMapping, context);
+            }
+
+            return emptyInstance;
+        } catch (InstantiationException | IllegalAccessException | InvocationTargetException | ClassNotFoundException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    private static <T> void defineFieldValue(Document document,
+                                             T emptyInstance,
+                                             FieldMapping fieldMapping,
+                                             DecodeContext context) {
+        FieldAccessor accessor = fieldMapping.accessor;
+        Object currentInspectionObject = document.get(fieldMapping.key);
+
+        if (fieldMapping.mongoPrimitive) {
+            if (currentInspectionObject instanceof Number) {
+                Number number = (Number) currentInspectionObject;
+                if (fieldMapping.type == int.class) {
+                    accessor.setInt(emptyInstance, number.intValue());
+                } else if (fieldMapping.type == long.class) {
+                    accessor.setLong(emptyInstance, number.longValue());
+                } else if (fieldMapping.type == double.class) {
+                    accessor.setDouble(emptyInstance, number.doubleValue());
+                } else {
+                    accessor.set(emptyInstance, parseFromNumber(number, fieldMapping.type));
+                }
+            } else if (currentInspectionObject != null || !fieldMapping.type.isPrimitive()) {
+                accessor.set(emptyInstance, currentInspectionObject);
+            }
+        } else if (currentInspectionObject instanceof ObjectId) {
+            context.decodeReference((ObjectId) currentInspectionObject, fieldMapping.type, value -> accessor.set(emptyInstance, value));
+        } else if (fieldMapping.type.isEnum()) {
+            for (Object enumConstant : fieldMapping.type.getEnumConstants()) {
+                if (enumConstant.toString().equals(currentInspectionObject)) {
+                    accessor.set(emptyInstance, enumConstant);
+                    break;
+                }
+            }
+        } else if (currentInspectionObject instanceof Iterable) {
+            // List/Set/Array handling
+            if (fieldMapping.type.isArray()) {
+                // Determine length to instantiate array
+                Iterable<Object> dbEntry = (Iterable<Object>) currentInspectionObject;
+                int length = 0;
+                for (Object o : dbEntry) {
+                    length++;
+                }
+
+                // Create array and copy content from the db entry
+                Object arr = Array.newInstance(fieldMapping.elementType, length);
+                int i = 0;
+                for (Object arrayItem : dbEntry) {
+                    int index = i++;
+                    if (arrayItem instanceof ObjectId) {
+                        context.decodeReference((ObjectId) arrayItem, fieldMapping.elementType, value -> Array.set(arr, index, value));
+                    } else {
+                        Array.set(arr, index, parse(arrayItem));
+                    }
+                }
+
+                accessor.set(emptyInstance, arr);
+            } else if (isClass(fieldMapping.type, List.class)) {
+                List<Object> list = new ArrayList<>();
+
+                if (fieldMapping.elementType != null) {
+                    ((Iterable<Object>) currentInspectionObject).forEach(item -> {
+                        if (item instanceof ObjectId) {
+                            // Placeholder until the reference is resolved
+                            int index = list.size();
+                            list.add(null);
+                            context.decodeReference((ObjectId) item, fieldMapping.elementType, value -> list.set(index, value));
+                        } else {
+                            list.add(parse(item));
+                        }
+                    });
+                }
+
+                accessor.set(emptyInstance, list);
+            } else if (isClass(fieldMapping.type, Set.class)) {
+                Set<Object> set = new HashSet<>();
+
+                if (fieldMapping.elementType != null) {
+                    ((Iterable<Object>) currentInspectionObject).forEach(item -> {
+                        if (item instanceof ObjectId) {
+                            context.decodeReference((ObjectId) item, fieldMapping.elementType, set::add);
+                        } else {
+                            set.add(parse(item));
+                        }
+                    });
+                }
+
+                accessor.set(emptyInstance, set);
+            }
+        }
+    }
+
+    static Object parseFromNumber(Number number, Class<?> type) {
+        if (type == byte.class || type == Byte.class) {
+            return number.byteValue();
+        } else if (type == short.class || type == Short.class) {
+            return number.shortValue();
+        } else if (type == int.class || type == Integer.class) {
+            return number.intValue();
+        } else if (type == long.class || type == Long.class) {
+            return number.longValue();
+        } else if (type == float.class || type == Float.class) {
+            return number.floatValue();
+        } else if (type == double.class || type == Double.class) {
+            return number.doubleValue();
+        } else {
+            return number;
+        }
+    }
+
+    /**
+     * Parses a non-reference item of a container. References nested in inner containers
+     * aren't supported and result in null.
+     */
+    private static Object parse(Object inspection) {
+        if (isMongoPrimitive(inspection.getClass())) {
+            return inspection;
+        } else if (isClass(inspection.getClass(), List.class)) {
+            List<Object> list = new ArrayList<>();
+            ((Iterable<Object>) inspection).forEach(item -> list.add(parse(item)));
+            return list;
+        } else if (isClass(inspection.getClass(), Set.class)) {
+            Set<Object> set = new HashSet<>();
+            ((Iterable<Object>) inspection).forEach(item -> set.add(parse(item)));
+            return set;
+        } else if (inspection.getClass().isArray()) {
+            // todo: implement
+        }
+        return null;
+    }
+
+    static boolean isMongoPrimitive(Class<?> clazz) {
+        return clazz.isPrimitive()
+                || clazz.equals(String.class)
+                || clazz.equals(Boolean.class)
+                || clazz.equals(Byte.class)
+                || clazz.equals(Short.class)
+                || clazz.equals(Integer.class)
+                || clazz.equals(Long.class)
+                || clazz.equals(Float.class)
+                || clazz.equals(Double.class)
+                || clazz.equals(UUID.class);
+    }
+
+    /**
+     * Creates the filter matching all given pairs. Objects as values are matched by their
+     * {@code ObjectId}.
+     *
+     * @return the filter or null if an object value isn't stored, so nothing can match
+     */
+    Bson createFilter(Pair... pairs) {
+        // In the order of the keys, so equal filters render equally for the query cache
+        Pair[] sorted = pairs.clone();
+        Arrays.sort(sorted, Comparator.comparing(pair -> pair.key));
+
+        Set<Bson> filters = new LinkedHashSet<>();
+        for (Pair pair : sorted) {
+            if (isMongoPrimitive(pair.value.getClass()) || pair.value == null) {
+                filters.add(Filters.eq(pair.key, pair.value));
+            } else {
+                ObjectId subObjId = getObjectIdFrom(pair.value);
+                if (subObjId == null) {
+                    // Object isn't present in the database so cannot be the reference to the key
+                    return null;
+                } else {
+                    filters.add(Filters.eq(pair.key, subObjId));
+                }
+            }
+        }
+        return Filters.and(filters);
+    }
+
+    /**
+     * Returns the equality requirements the pairs consist of in the form of
+     * {@link WritePlan#equalityKey(Object, CodecRegistry)}, null if the pairs aren't exactly the
+     * equality requirements of the class.
+     */
+    private BsonDocument equalityKeyOf(Class<?> targetClass, Pair... pairs) {
+        if (!existenceFilters.containsKey(collection(targetClass))) {
+            return null;
+        }
+
+        Map<String, Class<?>> types = new HashMap<>();
+        for (FieldMapping fieldMapping : ClassMapping.of(targetClass).equalityFields) {
+            types.put(fieldMapping.key, fieldMapping.type);
+        }
+
+        Map<String, BsonValue> values = new TreeMap<>();
+        for (Pair pair : pairs) {
+            Object value = pair.value;
+            if (value != null) {
+                value = isMongoPrimitive(value.getClass()) ? valueOfField(value, types.get(pair.key)) : null;
+                if (value == null) {
+                    return null;
+                }
+            }
+            values.put(pair.key, Filters.eq(pair.key, value).toBsonDocument(BsonDocument.class, DB.getCodecRegistry()).get(pair.key));
+        }
+        if (!new ArrayList<>(values.keySet()).equals(ClassMapping.of(targetClass).equalityKeys)) {
+            return null;
+        }
+
+        BsonDocument key = new BsonDocument();
+        values.forEach(key::append);
+        return key;
+    }
+
+    /**
+     * Converts the value of a pair to the type of its field, so it is encoded with the BSON type of
+     * the stored objects: a query for {@code 5} matches a stored {@code 5L}, the existence filter
+     * only if the key holds a {@code BsonInt64} as well.
+     *
+     * @return the converted value, null if the types can't be matched
+     */
+    private static Object valueOfField(Object value, Class<?> type) {
+        if (type == null) {
+            return null;
+        }
+
+        Class<?> boxed = MethodType.methodType(type).wrap().returnType();
+        if (value instanceof Number) {
+            Object converted = parseFromNumber((Number) value, boxed);
+            // Fields of other number types, e.g. Number or BigDecimal, may hold any of them
+            return converted.getClass() == boxed ? converted : null;
+        }
+        return boxed.isInstance(value) ? value : null;
+    }
+
+    static Set<Bson> createEqualityRequirementsSet(Object storageObject) {
+        Set<Bson> equalityRequirements = new HashSet<>();
+        for (FieldMapping fieldMapping : ClassMapping.of(storageObject.getClass()).equalityFields) {
+            equalityRequirements.add(Filters.eq(fieldMapping.key, fieldMapping.accessor.get(storageObject)));
+        }
+        return equalityRequirements;
+    }
+
+    static String collection(Class<?> clazz) {
+        return ClassMapping.of(clazz).collection;
+    }
+
+    private static boolean isClass(Class<?> toCheck, Class<?> target) {
+        if (toCheck == target) {
+            return true;
+        }
+
+        Class<?> superClass = toCheck.getSuperclass();
+        while (superClass != null) {
+            if (superClass == target) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static <T> MongirlCodec<T> codec(Class<T> clazz) {
+        return MongirlCodec.of(clazz);
+    }
+
+    /**
+     * Returns a fetched {@code Document}, {@code RawBsonDocument} or snapshot document as {@code BsonDocument}.
+     */
+    BsonDocument bsonOf(Object document) {
+        if (document instanceof ByteBuffer) {
+            ByteBuffer buffer = ((ByteBuffer) document).duplicate();
+            byte[] bytes = new byte[buffer.remaining()];
+            buffer.get(bytes);
+            return new RawBsonDocument(bytes);
+        }
+        return document instanceof BsonDocument ? (BsonDocument) document
+                : ((Document) document).toBsonDocument(BsonDocument.class, DB.getCodecRegistry());
+    }
+
+    MongoDatabase getDB() {
+        return DB;
+    }
+}
@@ -0,0 +1,447 @@
+package de.yniklas.mongirl;
+
+import com.mongodb.MongoClientSettings;
+import com.mongodb.MongoCredential;
+import com.mongodb.ServerAddress;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.FindOneAndReplaceOptions;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.reactivestreams.client.MongoClient;
+import com.mongodb.reactivestreams.client.MongoClients;
+import com.mongodb.reactivestreams.client.MongoCollection;
+import com.mongodb.reactivestreams.client.MongoDatabase;
+import de.yniklas.mongirl.exception.MongirlStoreException;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.UuidRepresentation;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+
+import java.io.Closeable;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * The non-blocking sibling of {@link Mongirl}, based on the reactive streams driver. The stored
+ * documents are the same, all operations return a {@code CompletableFuture} instead of waiting
+ * for the database.
+ *
+ * Objects are always encoded and decoded by their {@link MongirlCodec}. References are resolved
+ * level by level like with {@link Mongirl}, but the queries of one level, one per collection and
+ * 1000 ids, run concurrently. Referenced objects are stored concurrently before the objects
+ * referencing them.
+ *
+ * The futures are completed by the threads of the driver, so dependent actions should be
+ * short or run asynchronously in an own executor.
+ *
+ * @author yNiklas
+ */
+public class MongirlAsync implements Closeable {
+    private final MongoClient CLIENT;
+    private final MongoDatabase DB;
+
+    /**
+     * Creates a {@code MongirlAsync} instance without any credentials or authentication.
+     *
+     * @param host the host address of the database
+     * @param port the port of the database
+     * @param dbName the name of the database
+     */
+    public MongirlAsync(String host, int port, String dbName) {
+        MongoClientSettings settings = MongoClientSettings.builder()
+                .applyToClusterSettings(builder -> builder.hosts(Collections.singletonList(
+                        new ServerAddress(host, port)
+                )))
+                .uuidRepresentation(UuidRepresentation.STANDARD)
+                .codecRegistry(Mongirl.CODEC_REGISTRY)
+                .build();
+
+        CLIENT = MongoClients.create(settings);
+        DB = CLIENT.getDatabase(dbName);
+    }
+
+    /**
+     * Create a {@code MongirlAsync} instance with credentials for the target database.
+     *
+     * @param host the host address of the database
+     * @param port the port of the database
+     * @param dbName the name of the database
+     * @param username the credentials username to authenticate the database connection
+     * @param authDB the database auth
+     * @param password the credentials password to authenticate the database connection
+     */
+    public MongirlAsync(String host, int port, String dbName, String username, String authDB, char[] password) {
+        MongoCredential credential = MongoCredential.createCredential(username, authDB, password);
+
+        MongoClientSettings settings = MongoClientSettings.builder()
+                .credential(credential)
+                .applyToClusterSettings(builder -> builder.hosts(Collections.singletonList(
+                        new ServerAddress(host, port)
+                )))
+                .uuidRepresentation(UuidRepresentation.STANDARD)
+                .codecRegistry(Mongirl.CODEC_REGISTRY)
+                .build();
+
+        CLIENT = MongoClients.create(settings);
+        DB = CLIENT.getDatabase(dbName);
+    }
+
+    /**
+     * Stores the given object and the objects it references to the database, see
+     * {@link Mongirl#store(Object)}. Objects referencing each other in a cycle are stored without
+     * the reference closing the cycle first and are rewritten with it, once all objects have
+     * their ids.
+     *
+     * @param storageObject the object to store
+     * @return the future of the ObjectId of the stored object, failing with a
+     *         {@link MongirlStoreException} if the object couldn't be stored
+     */
+    public CompletableFuture<ObjectId> store(Object storageObject) {
+        StoreOperation operation = new StoreOperation();
+        return store(storageObject, operation)
+                .thenCompose(id -> rewriteCycles(operation).thenApply(done -> id))
+                .handle((id, failure) -> {
+                    if (failure != null) {
+                        Throwable cause = failure instanceof CompletionException ? failure.getCause() : failure;
+                        throw new CompletionException(cause instanceof MongirlStoreException
+                                ? cause : new MongirlStoreException(cause.getMessage()));
+                    }
+                    return id;
+                });
+    }
+
+    /**
+     * Evaluates whether an object is stored based on its equal relevant attributes, see
+     * {@link Mongirl#getObjectIdFrom(Object)}.
+     *
+     * @param storageObject the object to get the {@code ObjectId} from
+     * @return the future of the objects {@code ObjectId}, completed with null if it isn't stored
+     */
+    public CompletableFuture<ObjectId> getObjectIdFrom(Object storageObject) {
+        Set<Bson> equalityRequirements = Mongirl.createEqualityRequirementsSet(storageObject);
+        if (equalityRequirements.size() == 0 || Mongirl.collection(storageObject.getClass()) == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        return Publishers.first(DB.getCollection(Mongirl.collection(storageObject.getClass()))
+                        .find(Filters.and(equalityRequirements)).projection(Projections.include("_id")).first())
+                .thenApply(found -> found == null ? null : found.getObjectId("_id"));
+    }
+
+    /**
+     * Decodes a database stored object based on given filters, see
+     * {@link Mongirl#decodeFromFilters(Class, Pair...)}.
+     *
+     * @param targetClass the {@code Class} of the decoded object
+     * @param pairs the search parameters given as {@link Pair}
+     * @param <T> the type of the decoded object
+     * @return the future of the decoded, first result of the search, completed with null if there
+     *         was no search result
+     */
+    public <T> CompletableFuture<T> decodeFromFilters(Class<T> targetClass, Pair... pairs) {
+        if (Mongirl.collection(targetClass) == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        if (pairs.length == 0) {
+            return decodeAll(targetClass).thenApply(all -> all.isEmpty() ? null : all.get(0));
+        }
+
+        return createFilter(pairs).thenCompose(filter -> {
+            if (filter == null) {
+                return CompletableFuture.completedFuture(null);
+            }
+
+            return Publishers.first(collection(targetClass).find(filter).first()).thenCompose(document -> {
+                if (document == null) {
+                    return CompletableFuture.completedFuture(null);
+                }
+                return decode(targetClass, Map.of(DecodeContext.idOf(document), document))
+                        .thenApply(decoded -> decoded.get(0));
+            });
+        });
+    }
+
+    /**
+     * Decodes all objects of a given type stored in the database.
+     *
+     * @param targetClass the {@code Class} of the objects to decode
+     * @param <T> the type of the decoded objects
+     * @return the future of a {@link List} with all decoded objects
+     */
+    public <T> CompletableFuture<List<T>> decodeAll(Class<T> targetClass) {
+        return decodeAll(targetClass, List.of());
+    }
+
+    /**
+     * Decodes all objects of a given type stored in the database, except the blacklisted ones.
+     *
+     * @param targetClass the {@code Class} of the objects to decode
+     * @param blackList the ids of the objects to leave out
+     * @param <T> the type of the decoded objects
+     * @return the future of a {@link List} with all decoded objects
+     */
+    public <T> CompletableFuture<List<T>> decodeAll(Class<T> targetClass, Collection<ObjectId> blackList) {
+        if (Mongirl.collection(targetClass) == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        // Small blacklists are applied by the server, large ones locally to keep the query small
+        Bson filter = new Document();
+        Set<ObjectId> excluded = Set.of();
+        if (blackList.size() > DecodeContext.BATCH_SIZE) {
+            excluded = new HashSet<>(blackList);
+        } else if (!blackList.isEmpty()) {
+            filter = Filters.nin("_id", blackList);
+        }
+
+        Set<ObjectId> locallyExcluded = excluded;
+        return Publishers.all(collection(targetClass).find(filter)).thenCompose(found -> {
+            Map<ObjectId, Object> documents = new LinkedHashMap<>();
+            for (RawBsonDocument document : found) {
+                ObjectId id = DecodeContext.idOf(document);
+                if (!locallyExcluded.contains(id)) {
+                    documents.put(id, document);
+                }
+            }
+            return decode(targetClass, documents);
+        });
+    }
+
+    /**
+     * Decodes an object stored in the database with the given {@code ObjectId}.
+     *
+     * @param targetClass the {@code Class} of the decoded object
+     * @param _id the {@code ObjectId} of the database document to decode
+     * @param <T> the type of the decoded object
+     * @return the future of the decoded object, completed with null if there is no such document
+     */
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<T> decodeTo(Class<T> targetClass, ObjectId _id) {
+        if (Mongirl.collection(targetClass) == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        DecodeContext context = new DecodeContext(null);
+        context.decodeReference(_id, targetClass, null);
+        return resolve(context).thenApply(done -> (T) context.get(_id));
+    }
+
+    /**
+     * Decodes objects from already fetched documents and resolves their references.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> CompletableFuture<List<T>> decode(Class<T> targetClass, Map<ObjectId, Object> documents) {
+        String collection = Mongirl.collection(targetClass);
+        DecodeContext context = new DecodeContext(null);
+        documents.forEach((id, document) -> {
+            context.prefetch(collection, id, document);
+            context.decodeReference(id, targetClass, null);
+        });
+
+        return resolve(context).thenApply(done -> {
+            List<T> objects = new ArrayList<>(documents.size());
+            for (ObjectId id : documents.keySet()) {
+                objects.add((T) context.get(id));
+            }
+            return objects;
+        });
+    }
+
+    /**
+     * Resolves the pending references of a context level by level. The documents of a level are
+     * fetched with concurrent queries, one per collection and {@link DecodeContext#BATCH_SIZE} ids.
+     */
+    private CompletableFuture<Void> resolve(DecodeContext context) {
+        Map<String, List<ObjectId>> missing = context.nextLevel();
+        if (missing == null) {
+            context.assign();
+            return CompletableFuture.completedFuture(null);
+        }
+
+        Map<ObjectId, Object> documents = new ConcurrentHashMap<>();
+        List<CompletableFuture<Void>> fetches = new ArrayList<>();
+        missing.forEach((collection, ids) -> {
+            for (int from = 0; from < ids.size(); from += DecodeContext.BATCH_SIZE) {
+                List<ObjectId> batch = ids.subList(from, Math.min(from + DecodeContext.BATCH_SIZE, ids.size()));
+                fetches.add(Publishers.all(DB.getCollection(collection, RawBsonDocument.class).find(Filters.in("_id", batch)))
+                        .thenAccept(found -> found.forEach(document -> documents.put(DecodeContext.idOf(document), document))));
+            }
+        });
+
+        return CompletableFuture.allOf(fetches.toArray(new CompletableFuture<?>[0])).thenCompose(done -> {
+            context.completeLevel(documents);
+            return resolve(context);
+        });
+    }
+
+    /**
+     * Starts storing an object after the objects it references. Objects are identified by
+     * identity, so every object of the graph is stored once.
+     */
+    private CompletableFuture<ObjectId> store(Object storageObject, StoreOperation operation) {
+        CompletableFuture<ObjectId> started = operation.ids.get(storageObject);
+        if (started != null) {
+            return started;
+        }
+        if (Mongirl.collection(storageObject.getClass()) == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        CompletableFuture<ObjectId> id = new CompletableFuture<>();
+        operation.ids.put(storageObject, id);
+        operation.path.add(storageObject);
+
+        List<CompletableFuture<ObjectId>> references = new ArrayList<>();
+        try {
+            // Collects the referenced objects, references back to an object on the path close a cycle
+            MongirlCodec.of(storageObject.getClass()).encode(storageObject, (key, referenced, element) -> {
+                if (!operation.path.contains(referenced)) {
+                    references.add(store(referenced, operation));
+                }
+                return null;
+            });
+        } catch (RuntimeException exception) {
+            id.completeExceptionally(exception);
+            return id;
+        } finally {
+            operation.path.remove(storageObject);
+        }
+
+        CompletableFuture.allOf(references.toArray(new CompletableFuture<?>[0]))
+                .thenCompose(done -> write(storageObject, operation))
+                .whenComplete((written, failure) -> {
+                    if (failure != null) {
+                        id.completeExceptionally(failure);
+                    } else {
+                        id.complete(written);
+                    }
+                });
+        return id;
+    }
+
+    /**
+     * Writes an object whose references are stored, except the ones closing a cycle.
+     */
+    private CompletableFuture<ObjectId> write(Object storageObject, StoreOperation operation) {
+        boolean[] cycle = {false};
+        RawBsonDocument encoded = MongirlCodec.of(storageObject.getClass()).encode(storageObject, (key, referenced, element) -> {
+            CompletableFuture<ObjectId> referencedId = operation.ids.get(referenced);
+            if (referencedId == null) {
+                return null;
+            }
+            if (!referencedId.isDone()) {
+                cycle[0] = true;
+                return null;
+            }
+            return referencedId.join();
+        });
+        if (cycle[0]) {
+            operation.cycles.add(storageObject);
+        }
+
+        Set<Bson> equalityRequirements = Mongirl.createEqualityRequirementsSet(storageObject);
+        MongoCollection<RawBsonDocument> collection = collection(storageObject.getClass());
+
+        CompletableFuture<ObjectId> replaced = CompletableFuture.completedFuture(null);
+        if (equalityRequirements.size() != 0) {
+            replaced = Publishers.first(collection.findOneAndReplace(Filters.and(equalityRequirements), encoded,
+                            new FindOneAndReplaceOptions().projection(Projections.include("_id"))))
+                    .thenApply(updated -> updated == null ? null : updated.getObjectId("_id").getValue());
+        }
+
+        return replaced.thenCompose(updatedId -> {
+            if (updatedId != null) {
+                return CompletableFuture.completedFuture(updatedId);
+            }
+
+            // The encoded document has no _id, an upsert takes it from the filter
+            ObjectId insertedId = new ObjectId();
+            return Publishers.first(collection.replaceOne(Filters.eq("_id", insertedId), encoded, new ReplaceOptions().upsert(true)))
+                    .thenApply(result -> insertedId);
+        });
+    }
+
+    /**
+     * Rewrites the objects stored without the references closing a cycle, now that all objects
+     * of the graph have their ids.
+     */
+    private CompletableFuture<Void> rewriteCycles(StoreOperation operation) {
+        List<CompletableFuture<?>> rewrites = new ArrayList<>();
+        for (Object storageObject : operation.cycles) {
+            RawBsonDocument encoded = MongirlCodec.of(storageObject.getClass()).encode(storageObject, (key, referenced, element) -> {
+                CompletableFuture<ObjectId> referencedId = operation.ids.get(referenced);
+                return referencedId == null ? null : referencedId.join();
+            });
+
+            rewrites.add(Publishers.first(collection(storageObject.getClass())
+                    .replaceOne(Filters.eq("_id", operation.ids.get(storageObject).join()), encoded)));
+        }
+        return CompletableFuture.allOf(rewrites.toArray(new CompletableFuture<?>[0]));
+    }
+
+    /**
+     * Creates the filter matching all given pairs. Objects as values are matched by their
+     * {@code ObjectId}, which are looked up concurrently.
+     *
+     * @return the future of the filter, completed with null if an object value isn't stored
+     */
+    private CompletableFuture<Bson> createFilter(Pair... pairs) {
+        List<CompletableFuture<Bson>> filters = new ArrayList<>();
+        for (Pair pair : pairs) {
+            if (pair.value == null || Mongirl.isMongoPrimitive(pair.value.getClass())) {
+                filters.add(CompletableFuture.completedFuture(Filters.eq(pair.key, pair.value)));
+            } else {
+                filters.add(getObjectIdFrom(pair.value).thenApply(id -> id == null ? null : Filters.eq(pair.key, id)));
+            }
+        }
+
+        return CompletableFuture.allOf(filters.toArray(new CompletableFuture<?>[0])).thenApply(done -> {
+            List<Bson> all = new ArrayList<>();
+            for (CompletableFuture<Bson> filter : filters) {
+                if (filter.join() == null) {
+                    // Object isn't present in the database so cannot be the reference to the key
+                    return null;
+                }
+                all.add(filter.join());
+            }
+            return Filters.and(all);
+        });
+    }
+
+    /**
+     * Closes the client of this instance, pending operations fail afterwards.
+     */
+    @Override
+    public void close() {
+        CLIENT.close();
+    }
+
+    private MongoCollection<RawBsonDocument> collection(Class<?> clazz) {
+        return DB.getCollection(Mongirl.collection(clazz), RawBsonDocument.class);
+    }
+
+    /**
+     * State of one store operation.
+     */
+    private static final class StoreOperation {
+        /**
+         * The ids of the objects of the graph, completed once the object is written.
+         */
+        final Map<Object, CompletableFuture<ObjectId>> ids = Collections.synchronizedMap(new IdentityHashMap<>());
+
+        /**
+         * The objects whose references are collected at the moment, the current path through the graph.
+         */
+        final Set<Object> path = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        /**
+         * Objects stored without the references closing a cycle.
+         */
+        final Queue<Object> cycles = new ConcurrentLinkedQueue<>();
+    }
+}
@@ -0,0 +1,478 @@
+package de.yniklas.mongirl;
+
+import de.yniklas.mongirl.exception.MongirlDecodeException;
+import org.bson.BsonBinary;
+import org.bson.BsonBinarySubType;
+import org.bson.BsonBinaryWriter;
+import org.bson.BsonObjectId;
+import org.bson.BsonReader;
+import org.bson.BsonReaderMark;
+import org.bson.BsonType;
+import org.bson.BsonWriter;
+import org.bson.RawBsonDocument;
+import org.bson.UuidRepresentation;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.bson.codecs.configuration.CodecConfigurationException;
+import org.bson.io.BasicOutputBuffer;
+import org.bson.types.ObjectId;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * A {@link Codec} for a class annotated with {@link Store} or {@link Dataclass}, derived from its
+ * {@link ClassMapping}. The codec writes the stored fields straight to a {@link BsonWriter} and
+ * reads them straight from a {@link BsonReader}, without an intermediate {@code Document}.
+ * The documents are the same as the ones {@link Mongirl} creates without codecs: keys from
+ * {@link StoreWith#key()}, no fields annotated with {@link DontStore} and the {@code classpath}
+ * discriminator where required.
+ *
+ * <p>Referenced objects are stored in their own collections. {@link Mongirl} stores and resolves
+ * them while encoding and decoding. Used on its own, e.g. through a typed {@code MongoCollection},
+ * the codec leaves references unset on decode and refuses to encode objects with references.</p>
+ *
+ * @param <T> the class encoded and decoded by this codec
+ */
+public final class MongirlCodec<T> implements Codec<T> {
+    private static final ClassValue<MongirlCodec<?>> CODECS = new ClassValue<>() {
+        @Override
+        protected MongirlCodec<?> computeValue(Class<?> type) {
+            return new MongirlCodec<>(type);
+        }
+    };
+
+    private static final ReferenceEncoder NO_REFERENCES = (key, referenced, element) -> {
+        throw new CodecConfigurationException(
+                "The reference " + key + " can only be encoded through Mongirl#store");
+    };
+
+    private static final ReferenceDecoder IGNORE_REFERENCES = (id, targetClass, assignment) -> { };
+
+    /**
+     * Placeholder for references in decoded containers until the container is created.
+     */
+    private static final Object REFERENCE = new Object();
+
+    private final Class<T> type;
+    private final ClassMapping mapping;
+
+    private MongirlCodec(Class<T> type) {
+        this.type = type;
+        this.mapping = ClassMapping.of(type);
+    }
+
+    /**
+     * Returns the codec of the given class, creating it on first use.
+     *
+     * @param type the class to get the codec for
+     * @param <T> the type of the class
+     * @return the codec of the class
+     */
+    @SuppressWarnings("unchecked")
+    static <T> MongirlCodec<T> of(Class<T> type) {
+        return (MongirlCodec<T>) CODECS.get(type);
+    }
+
+    @Override
+    public void encode(BsonWriter writer, T value, EncoderContext encoderContext) {
+        encode(writer, value, NO_REFERENCES);
+    }
+
+    @Override
+    public T decode(BsonReader reader, DecoderContext decoderContext) {
+        return decode(reader, IGNORE_REFERENCES);
+    }
+
+    @Override
+    public Class<T> getEncoderClass() {
+        return type;
+    }
+
+    /**
+     * Encodes the given object to a raw BSON document without {@code _id}.
+     *
+     * @param value the object to encode
+     * @param references resolves the {@code ObjectId}s of referenced objects
+     * @return the encoded document
+     */
+    RawBsonDocument encode(Object value, ReferenceEncoder references) {
+        BasicOutputBuffer buffer = new BasicOutputBuffer();
+        try (BsonBinaryWriter writer = new BsonBinaryWriter(buffer)) {
+            encode(writer, value, references);
+        }
+        return new RawBsonDocument(buffer.getInternalBuffer(), 0, buffer.getPosition());
+    }
+
+    void encode(BsonWriter writer, Object value, ReferenceEncoder references) {
+        if (value.getClass() != type) {
+            of(value.getClass()).encode(writer, value, references);
+            return;
+        }
+
+        writer.writeStartDocument();
+        for (FieldMapping fieldMapping : mapping.fieldsByKey.values()) {
+            writeField(writer, fieldMapping, value, references);
+        }
+
+        if (mapping.addClasspath) {
+            writer.writeString("classpath", type.getName());
+        }
+        writer.writeEndDocument();
+    }
+
+    /**
+     * Decodes a document to an object of the class stored in its {@code classpath},
+     * or of this codecs class if there is none.
+     *
+     * @param reader the reader positioned at the start of the document
+     * @param references receives the references of the decoded object
+     * @return the decoded object
+     */
+    @SuppressWarnings("unchecked")
+    T decode(BsonReader reader, ReferenceDecoder references) {
+        if (!Modifier.isFinal(type.getModifiers())) {
+            String classpath = readClasspath(reader);
+            if (classpath != null && !classpath.equals(type.getName())) {
+                Class<?> realClass;
+                try {
+                    realClass = ClassMapping.forClasspath(classpath);
+                } catch (ClassNotFoundException e) {
+                    throw new MongirlDecodeException(String.format(MongirlDecodeException.UNKNOWN_CLASSPATH, classpath));
+                }
+                return (T) of(realClass).decodeDocument(reader, references);
+            }
+        }
+        return decodeDocument(reader, references);
+    }
+
+    private T decodeDocument(BsonReader reader, ReferenceDecoder references) {
+        T instance;
+        try {
+            instance = type.cast(mapping.newInstance());
+        } catch (InstantiationException | IllegalAccessException | InvocationTargetException e) {
+            throw new MongirlDecodeException(String.format(MongirlDecodeException.NO_INSTANCE, type.getName(), e));
+        }
+
+        reader.readStartDocument();
+        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+            FieldMapping fieldMapping = mapping.fieldsByKey.get(reader.readName());
+            if (fieldMapping == null) {
+                reader.skipValue();
+            } else {
+                readField(reader, fieldMapping, instance, references);
+            }
+        }
+        reader.readEndDocument();
+
+        return instance;
+    }
+
+    private static String readClasspath(BsonReader reader) {
+        BsonReaderMark mark = reader.getMark();
+        String classpath = null;
+
+        reader.readStartDocument();
+        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+            if (reader.readName().equals("classpath") && reader.getCurrentBsonType() == BsonType.STRING) {
+                classpath = reader.readString();
+                break;
+            }
+            reader.skipValue();
+        }
+
+        mark.reset();
+        return classpath;
+    }
+
+    private void writeField(BsonWriter writer, FieldMapping fieldMapping, Object object, ReferenceEncoder references) {
+        FieldAccessor accessor = fieldMapping.accessor;
+
+        // Primitives without boxing
+        if (fieldMapping.type == int.class) {
+            writer.writeInt32(fieldMapping.key, accessor.getInt(object));
+            return;
+        } else if (fieldMapping.type == long.class) {
+            writer.writeInt64(fieldMapping.key, accessor.getLong(object));
+            return;
+        } else if (fieldMapping.type == double.class) {
+            writer.writeDouble(fieldMapping.key, accessor.getDouble(object));
+            return;
+        } else if (fieldMapping.type == boolean.class) {
+            writer.writeBoolean(fieldMapping.key, accessor.getBoolean(object));
+            return;
+        }
+
+        Object value = accessor.get(object);
+        if (value == null) {
+            writer.writeNull(fieldMapping.key);
+        } else if (Mongirl.isMongoPrimitive(value.getClass())) {
+            writer.writeName(fieldMapping.key);
+            writePrimitive(writer, value);
+        } else if (fieldMapping.type.isEnum()) {
+            writer.writeString(fieldMapping.key, value.toString());
+        } else if (value instanceof List || value instanceof Set) {
+            writer.writeStartArray(fieldMapping.key);
+            for (Object item : (Iterable<?>) value) {
+                writeElement(writer, fieldMapping.key, item, references);
+            }
+            writer.writeEndArray();
+        } else if (value instanceof Iterable) {
+            // Neither list nor set, not stored
+        } else if (fieldMapping.type.isArray()) {
+            writer.writeStartArray(fieldMapping.key);
+            int length = Array.getLength(value);
+            for (int i = 0; i < length; i++) {
+                writeElement(writer, fieldMapping.key, Array.get(value, i), references);
+            }
+            writer.writeEndArray();
+        } else {
+            writer.writeName(fieldMapping.key);
+            writeReference(writer, references.encodeReference(fieldMapping.key, value, false));
+        }
+    }
+
+    private static void writeElement(BsonWriter writer, String key, Object item, ReferenceEncoder references) {
+        if (item == null) {
+            writer.writeNull();
+        } else if (Mongirl.isMongoPrimitive(item.getClass())) {
+            writePrimitive(writer, item);
+        } else {
+            writeReference(writer, references.encodeReference(key, item, true));
+        }
+    }
+
+    private static void writeReference(BsonWriter writer, Object id) {
+        if (id instanceof ObjectId) {
+            writer.writeObjectId((ObjectId) id);
+        } else if (id instanceof BsonObjectId) {
+            writer.writeObjectId(((BsonObjectId) id).getValue());
+        } else {
+            writer.writeNull();
+        }
+    }
+
+    private static void writePrimitive(BsonWriter writer, Object value) {
+        if (value instanceof String) {
+            writer.writeString((String) value);
+        } else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            writer.writeInt32(((Number) value).intValue());
+        } else if (value instanceof Long) {
+            writer.writeInt64((Long) value);
+        } else if (value instanceof Double || value instanceof Float) {
+            writer.writeDouble(((Number) value).doubleValue());
+        } else if (value instanceof Boolean) {
+            writer.writeBoolean((Boolean) value);
+        } else if (value instanceof Character) {
+            writer.writeString(value.toString());
+        } else if (value instanceof UUID) {
+            writer.writeBinaryData(new BsonBinary((UUID) value, UuidRepresentation.STANDARD));
+        } else {
+            writer.writeNull();
+        }
+    }
+
+    private void readField(BsonReader reader, FieldMapping fieldMapping, Object instance, ReferenceDecoder references) {
+        FieldAccessor accessor = fieldMapping.accessor;
+        Class<?> fieldType = fieldMapping.type;
+
+        switch (reader.getCurrentBsonType()) {
+            case NULL:
+                reader.readNull();
+                if (!fieldType.isPrimitive()) {
+                    accessor.set(instance, null);
+                }
+                break;
+            case INT32:
+                int int32 = reader.readInt32();
+                if (fieldType == int.class) {
+                    accessor.setInt(instance, int32);
+                } else {
+                    accessor.set(instance, Mongirl.parseFromNumber(int32, fieldType));
+                }
+                break;
+            case INT64:
+                long int64 = reader.readInt64();
+                if (fieldType == long.class) {
+                    accessor.setLong(instance, int64);
+                } else {
+                    accessor.set(instance, Mongirl.parseFromNumber(int64, fieldType));
+                }
+                break;
+            case DOUBLE:
+                double doubleValue = reader.readDouble();
+                if (fieldType == double.class) {
+                    accessor.setDouble(instance, doubleValue);
+                } else {
+                    accessor.set(instance, Mongirl.parseFromNumber(doubleValue, fieldType));
+                }
+                break;
+            case BOOLEAN:
+                accessor.setBoolean(instance, reader.readBoolean());
+                break;
+            case OBJECT_ID:
+                ObjectId id = reader.readObjectId();
+                references.decodeReference(id, fieldType, value -> accessor.set(instance, value));
+                break;
+            case ARRAY:
+                readContainer(reader, fieldMapping, instance, references);
+                break;
+            case STRING:
+            case BINARY:
+                Object value = readPrimitive(reader, fieldType);
+                if (value != null) {
+                    accessor.set(instance, value);
+                }
+                break;
+            default:
+                reader.skipValue();
+        }
+    }
+
+    private void readContainer(BsonReader reader, FieldMapping fieldMapping, Object instance, ReferenceDecoder references) {
+        Class<?> elementType = fieldMapping.elementType;
+        List<Object> items = new ArrayList<>();
+        List<Integer> referenceIndices = new ArrayList<>();
+        List<ObjectId> referenceIds = new ArrayList<>();
+
+        reader.readStartArray();
+        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+            if (reader.getCurrentBsonType() == BsonType.OBJECT_ID) {
+                referenceIndices.add(items.size());
+                referenceIds.add(reader.readObjectId());
+                items.add(REFERENCE);
+            } else {
+                items.add(readElement(reader, elementType));
+            }
+        }
+        reader.readEndArray();
+
+        if (fieldMapping.type.isArray()) {
+            Object array = Array.newInstance(elementType, items.size());
+            for (int i = 0; i < items.size(); i++) {
+                if (items.get(i) != null && items.get(i) != REFERENCE) {
+                    Array.set(array, i, items.get(i));
+                }
+            }
+            fieldMapping.accessor.set(instance, array);
+
+            for (int i = 0; i < referenceIds.size(); i++) {
+                int index = referenceIndices.get(i);
+                references.decodeReference(referenceIds.get(i), elementType, value -> Array.set(array, index, value));
+            }
+        } else if (fieldMapping.type == List.class) {
+            List<Object> list = new ArrayList<>();
+            if (elementType != null) {
+                for (Object item : items) {
+                    list.add(item == REFERENCE ? null : item);
+                }
+                for (int i = 0; i < referenceIds.size(); i++) {
+                    int index = referenceIndices.get(i);
+                    references.decodeReference(referenceIds.get(i), elementType, value -> list.set(index, value));
+                }
+            }
+            fieldMapping.accessor.set(instance, list);
+        } else if (fieldMapping.type == Set.class) {
+            Set<Object> set = new HashSet<>();
+            if (elementType != null) {
+                for (Object item : items) {
+                    if (item != REFERENCE) {
+                        set.add(item);
+                    }
+                }
+                for (ObjectId referenceId : referenceIds) {
+                    references.decodeReference(referenceId, elementType, set::add);
+                }
+            }
+            fieldMapping.accessor.set(instance, set);
+        }
+    }
+
+    private static Object readElement(BsonReader reader, Class<?> elementType) {
+        switch (reader.getCurrentBsonType()) {
+            case NULL:
+                reader.readNull();
+                return null;
+            case INT32:
+                return Mongirl.parseFromNumber(reader.readInt32(), elementType);
+            case INT64:
+                return Mongirl.parseFromNumber(reader.readInt64(), elementType);
+            case DOUBLE:
+                return Mongirl.parseFromNumber(reader.readDouble(), elementType);
+            case BOOLEAN:
+                return reader.readBoolean();
+            case ARRAY:
+                List<Object> nested = new ArrayList<>();
+                reader.readStartArray();
+                while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+                    nested.add(readElement(reader, Object.class));
+                }
+                reader.readEndArray();
+                return nested;
+            case STRING:
+            case BINARY:
+                return readPrimitive(reader, elementType);
+            default:
+                reader.skipValue();
+                return null;
+        }
+    }
+
+    private static Object readPrimitive(BsonReader reader, Class<?> targetType) {
+        if (reader.getCurrentBsonType() == BsonType.BINARY) {
+            BsonBinary binary = reader.readBinaryData();
+            if (binary.getType() == BsonBinarySubType.UUID_STANDARD.getValue()) {
+                return binary.asUuid();
+            }
+            return null;
+        }
+
+        String value = reader.readString();
+        if (targetType != null && targetType.isEnum()) {
+            for (Object enumConstant : targetType.getEnumConstants()) {
+                if (enumConstant.toString().equals(value)) {
+                    return enumConstant;
+                }
+            }
+            return null;
+        } else if ((targetType == char.class || targetType == Character.class) && value.length() == 1) {
+            return value.charAt(0);
+        }
+        return value;
+    }
+
+    /**
+     * Resolves referenced objects to the id they are stored with.
+     */
+    @FunctionalInterface
+    interface ReferenceEncoder {
+        /**
+         * @param key the key of the field holding the reference
+         * @param referenced the referenced object
+         * @param element whether the reference is an element of a list, set or array
+         * @return the id of the referenced object or null, if it has none (yet)
+         */
+        Object encodeReference(String key, Object referenced, boolean element);
+    }
+
+    /**
+     * Receives the references found while decoding.
+     */
+    @FunctionalInterface
+    interface ReferenceDecoder {
+        /**
+         * @param id the {@code ObjectId} of the referenced document
+         * @param targetClass the class to decode the referenced document to
+         * @param assignment assigns the decoded object at the position of the reference
+         */
+        void decodeReference(ObjectId id, Class<?> targetClass, Consumer<Object> assignment);
+    }
+}
@@ -0,0 +1,19 @@
+package de.yniklas.mongirl;
+
+import org.bson.codecs.Codec;
+import org.bson.codecs.configuration.CodecProvider;
+import org.bson.codecs.configuration.CodecRegistry;
+
+/**
+ * Provides a {@link MongirlCodec} for every class annotated with {@link Store} or {@link Dataclass}.
+ * {@link Mongirl} registers this provider in the {@code CodecRegistry} of its client.
+ */
+public class MongirlCodecProvider implements CodecProvider {
+    @Override
+    public <T> Codec<T> get(Class<T> clazz, CodecRegistry registry) {
+        if (Mongirl.collection(clazz) == null) {
+            return null;
+        }
+        return MongirlCodec.of(clazz);
+    }
+}
@@ -0,0 +1,88 @@
+package de.yniklas.mongirl;
+
+import com.mongodb.client.MongoCursor;
+import org.bson.types.ObjectId;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Iterator over stored objects, which decodes them batch by batch while the underlying
+ * {@code MongoCursor} advances. See {@link Mongirl#iterate(Class, int, Pair...)}.
+ *
+ * @param <T> the type of the decoded objects
+ */
+public class MongirlCursor<T> implements Iterator<T>, Closeable {
+    private final Mongirl mongirl;
+    private final Class<T> targetClass;
+    private final MongoCursor<?> cursor;
+    private final int batchSize;
+
+    /**
+     * Ids of documents to skip.
+     */
+    private final Set<ObjectId> excluded;
+
+    private List<T> batch = List.of();
+    private int position = 0;
+
+    MongirlCursor(Mongirl mongirl, Class<T> targetClass, MongoCursor<?> cursor, int batchSize) {
+        this(mongirl, targetClass, cursor, batchSize, Set.of());
+    }
+
+    MongirlCursor(Mongirl mongirl, Class<T> targetClass, MongoCursor<?> cursor, int batchSize, Set<ObjectId> excluded) {
+        this.mongirl = mongirl;
+        this.targetClass = targetClass;
+        this.cursor = cursor;
+        this.batchSize = Math.max(1, batchSize);
+        this.excluded = excluded;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (position < batch.size()) {
+            return true;
+        }
+
+        // Decode the next batch, the references of all its documents are fetched together
+        Map<ObjectId, Object> documents = new LinkedHashMap<>();
+        while (cursor != null && documents.size() < batchSize && cursor.hasNext()) {
+            Object document = cursor.next();
+            ObjectId id = DecodeContext.idOf(document);
+            if (!excluded.contains(id)) {
+                documents.put(id, document);
+            }
+        }
+
+        if (documents.isEmpty()) {
+            return false;
+        }
+
+        batch = new DecodeContext(mongirl).decode(targetClass, documents);
+        position = 0;
+        return true;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return batch.get(position++);
+    }
+
+    /**
+     * Closes the underlying cursor.
+     */
+    @Override
+    public void close() {
+        if (cursor != null) {
+            cursor.close();
+        }
+    }
+}
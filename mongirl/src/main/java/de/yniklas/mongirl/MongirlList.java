@@ -2,11 +2,13 @@ package de.yniklas.mongirl;
 
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.Projections;
 import org.bson.Document;
 import org.bson.types.ObjectId;
 
 import java.lang.reflect.Array;
 import java.util.*;
+import java.util.stream.Stream;
 
 public class MongirlList<T> implements List<T> {
     /**
@@ -186,11 +188,7 @@ public class MongirlList<T> implements List<T> {
 
                 return mongirl.decodeAll(targetClass, ramModeList).toArray();
             } else {
-                T[] decoded = (T[]) Array.newInstance(targetClass, ramModeList.size());
-                for (int i = 0; i < ramModeList.size(); i++) {
-                    decoded[i] = mongirl.decodeTo(targetClass, ramModeList.iterator().next());
-                }
-                return decoded;
+                return mongirl.decodeMany(targetClass, ramModeList).toArray((T[]) Array.newInstance(targetClass, 0));
             }
         } else {
             return objectHold.toArray();
@@ -207,9 +205,7 @@ public class MongirlList<T> implements List<T> {
 
                 return mongirl.decodeAll(targetClass, ramModeList).toArray(a);
             } else {
-                List<T> decoded = new LinkedList<>();
-                ramModeList.forEach(objectId -> decoded.add(mongirl.decodeTo(targetClass, objectId)));
-                return decoded.toArray(a);
+                return mongirl.decodeMany(targetClass, ramModeList).toArray(a);
             }
 
         } else {
@@ -585,25 +581,40 @@ public class MongirlList<T> implements List<T> {
         return null;
     }
 
+    /**
+     * In RAM mode with the whole collection as starting point, the stream splits the collection
+     * into {@code _id} ranges and decodes the objects on multiple threads, see
+     * {@link Mongirl#parallelStream(Class, int)}. It is unordered, closing it closes its cursors.
+     *
+     * @return the parallel stream over the elements of the list
+     */
+    @Override
+    public Stream<T> parallelStream() {
+        if (ramMode && isRamModeListBlacklist) {
+            return mongirl.parallelStream(targetClass, DecodeContext.BATCH_SIZE, new HashSet<>(ramModeList));
+        }
+        return List.super.parallelStream();
+    }
+
     @Override
     public List<T> subList(int fromIndex, int toIndex) {
         if (ramMode) {
-            List<T> subList = new LinkedList<>();
+            List<ObjectId> subListIds = new ArrayList<>();
             if (isRamModeListBlacklist) {
                 MongoCollection<Document> collection = mongirl.getDB().getCollection(Mongirl.collection(targetClass));
                 int idx = 0;
-                for (Document document : collection.find()) {
+                for (Document document : collection.find().projection(Projections.include("_id"))) {
                     if (!ramModeList.contains(document.getObjectId("_id"))) {
                         if (idx >= fromIndex && idx < toIndex) {
-                            subList.add(mongirl.decodeTo(targetClass, document.getObjectId("_id")));
+                            subListIds.add(document.getObjectId("_id"));
                         }
                         idx++;
                     }
                 }
             } else {
-                ramModeList.subList(fromIndex, toIndex).forEach(objectId -> subList.add(mongirl.decodeTo(targetClass, objectId)));
+                subListIds.addAll(ramModeList.subList(fromIndex, toIndex));
             }
-            return subList;
+            return new LinkedList<>(mongirl.decodeMany(targetClass, subListIds));
         } else {
             return objectHold.subList(fromIndex, toIndex);
         }
@@ -0,0 +1,66 @@
+package de.yniklas.mongirl;
+
+/**
+ * Plain Java access to the objects of one class, generated at compile time by the
+ * {@code mongirl-processor} annotation processor. Mongirl looks up the mapper of a class by the
+ * name {@code <class name>_MongirlMapper} in the same package (nested classes with {@code _}
+ * instead of {@code $}) and uses it instead of reflection to instantiate the class and to read
+ * and write its fields. Classes without a mapper and fields the mapper can't access (e.g. private
+ * or final fields) are handled reflectively.
+ *
+ * A mapper covers the fields declared by its class only, fields of superclasses are accessed
+ * through the mapper of the superclass.
+ */
+public interface MongirlMapper {
+    /**
+     * The names of the fields this mapper can read and write. The position of a name is the
+     * index of the field for {@link #get} and {@link #set}.
+     *
+     * @return the names of the accessible fields
+     */
+    String[] fields();
+
+    /**
+     * Creates a new instance of the class with its first public constructor, called with
+     * default values for all parameters.
+     *
+     * @return the new instance or null if the class can't be instantiated by the mapper
+     */
+    Object newInstance();
+
+    Object get(Object target, int field);
+
+    void set(Object target, int field, Object value);
+
+    default int getInt(Object target, int field) {
+        return ((Number) get(target, field)).intValue();
+    }
+
+    default void setInt(Object target, int field, int value) {
+        set(target, field, value);
+    }
+
+    default long getLong(Object target, int field) {
+        return ((Number) get(target, field)).longValue();
+    }
+
+    default void setLong(Object target, int field, long value) {
+        set(target, field, value);
+    }
+
+    default double getDouble(Object target, int field) {
+        return ((Number) get(target, field)).doubleValue();
+    }
+
+    default void setDouble(Object target, int field, double value) {
+        set(target, field, value);
+    }
+
+    default boolean getBoolean(Object target, int field) {
+        return (Boolean) get(target, field);
+    }
+
+    default void setBoolean(Object target, int field, boolean value) {
+        set(target, field, value);
+    }
+}
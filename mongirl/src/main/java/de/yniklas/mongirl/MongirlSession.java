@@ -0,0 +1,185 @@
+package de.yniklas.mongirl;
+
+import com.mongodb.client.model.Projections;
+import de.yniklas.mongirl.exception.MongirlStoreException;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A unit of work on a {@link Mongirl} instance, see {@link Mongirl#openSession()}.
+ *
+ * All decodes of a session share one identity map: every document is fetched and decoded at most
+ * once, objects with the same id are the same instance across calls. Stored objects are queued
+ * and written together by {@link #flush()} with one bulk write per collection.
+ *
+ * A session isn't thread safe and doesn't see changes made to the database after an object was
+ * decoded. Decodes of a session ignore {@link Mongirl#lookupDepth}.
+ */
+public class MongirlSession implements Closeable {
+    private final Mongirl mongirl;
+
+    /**
+     * The identity map of the session.
+     */
+    private DecodeContext context;
+
+    /**
+     * The objects to write with the next flush.
+     */
+    private final List<Object> queued = new ArrayList<>();
+
+    MongirlSession(Mongirl mongirl) {
+        this.mongirl = mongirl;
+        this.context = new DecodeContext(mongirl);
+    }
+
+    /**
+     * Queues an object to be stored by the next {@link #flush()}, see {@link Mongirl#store(Object)}.
+     *
+     * @param storageObject the object to store
+     */
+    public void store(Object storageObject) {
+        queued.add(storageObject);
+    }
+
+    /**
+     * Writes all queued objects with one bulk write per collection. The written objects are added
+     * to the identity map of the session.
+     *
+     * @return the ids of the queued objects in the order they were queued, like
+     *         {@link Mongirl#store(Object)} returns them
+     */
+    public List<Object> flush() {
+        List<Object> ids = new ArrayList<>(queued.size());
+        if (queued.isEmpty()) {
+            return ids;
+        }
+
+        try {
+            WritePlan plan = new WritePlan(mongirl);
+            List<WritePlan.Entry> entries = new ArrayList<>(queued.size());
+            for (Object object : queued) {
+                entries.add(plan.add(object));
+            }
+            plan.execute();
+
+            for (int i = 0; i < queued.size(); i++) {
+                Object id = WritePlan.idOf(entries.get(i));
+                ids.add(id);
+                if (id != null) {
+                    context.put(entries.get(i).id, queued.get(i));
+                }
+            }
+        } catch (Exception exception) {
+            throw new MongirlStoreException(exception.getMessage());
+        } finally {
+            queued.clear();
+        }
+        return ids;
+    }
+
+    /**
+     * Decodes an object with the given {@code ObjectId}, see {@link Mongirl#decodeTo(Class, ObjectId)}.
+     * Objects already decoded by this session are neither fetched nor decoded again.
+     *
+     * @param targetClass the {@code Class} of the decoded object
+     * @param _id the {@code ObjectId} of the database document to decode
+     * @param <T> the type of the decoded object
+     * @return the decoded object or null if the decode fail
+     */
+    public <T> T decodeTo(Class<T> targetClass, ObjectId _id) {
+        return context.decode(targetClass, _id);
+    }
+
+    /**
+     * Decodes the objects with the given {@code ObjectId}s, see {@link Mongirl#decodeMany(Class, Collection)}.
+     *
+     * @param targetClass the {@code Class} of the decoded objects
+     * @param ids the {@code ObjectId}s of the database documents to decode
+     * @param <T> the type of the decoded objects
+     * @return the decoded objects in the order of the given ids, null for ids without a document
+     */
+    public <T> List<T> decodeMany(Class<T> targetClass, Collection<ObjectId> ids) {
+        return context.decodeAll(targetClass, ids);
+    }
+
+    /**
+     * Decodes the first object matching the filters, see {@link Mongirl#decodeFromFilters(Class, Pair...)}.
+     * Only the id of the result is queried, its document is fetched if the session hasn't decoded
+     * it yet.
+     *
+     * @param targetClass the {@code Class} of the decoded object
+     * @param pairs the search parameters given as {@link Pair}
+     * @param <T> the type of the decoded object
+     * @return the decoded, first result of the search or null if there was no result
+     */
+    public <T> T decodeFromFilters(Class<T> targetClass, Pair... pairs) {
+        String collection = Mongirl.collection(targetClass);
+        if (collection == null) {
+            return null;
+        }
+
+        Bson filter = pairs.length == 0 ? new Document() : mongirl.createFilter(pairs);
+        if (filter == null) {
+            return null;
+        }
+
+        Document found = mongirl.getDB().getCollection(collection).find(filter).projection(Projections.include("_id")).first();
+        if (found == null) {
+            return null;
+        }
+        return context.decode(targetClass, found.getObjectId("_id"));
+    }
+
+    /**
+     * Decodes all objects of a given type, see {@link Mongirl#decodeAll(Class)}. Only the ids are
+     * queried, the documents of objects the session hasn't decoded yet are fetched in batches.
+     *
+     * @param targetClass the {@code Class} of the objects to decode
+     * @param <T> the type of the decoded objects
+     * @return a {@link List} with all decoded objects
+     */
+    public <T> List<T> decodeAll(Class<T> targetClass) {
+        String collection = Mongirl.collection(targetClass);
+        if (collection == null) {
+            return null;
+        }
+
+        List<T> decodedObjects = new ArrayList<>();
+        List<ObjectId> ids = new ArrayList<>();
+        for (Document found : mongirl.getDB().getCollection(collection).find().projection(Projections.include("_id"))) {
+            ids.add(found.getObjectId("_id"));
+            if (ids.size() == DecodeContext.BATCH_SIZE) {
+                decodedObjects.addAll(context.decodeAll(targetClass, ids));
+                ids.clear();
+            }
+        }
+        decodedObjects.addAll(context.decodeAll(targetClass, ids));
+        return decodedObjects;
+    }
+
+    /**
+     * Forgets all decoded objects, later decodes fetch their documents again. Queued objects are kept.
+     */
+    public void clear() {
+        context = new DecodeContext(mongirl);
+    }
+
+    /**
+     * Writes the queued objects, see {@link #flush()}, and forgets all decoded objects.
+     */
+    @Override
+    public void close() {
+        try {
+            flush();
+        } finally {
+            clear();
+        }
+    }
+}
@@ -0,0 +1,273 @@
+package de.yniklas.mongirl;
+
+import de.yniklas.mongirl.exception.MongirlStoreException;
+import org.bson.BsonDocument;
+
+import java.io.Closeable;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Buffers stores and writes them in the background, see {@link Mongirl#writeBehind(int, long, int)}.
+ * The buffer holds the latest stored object per document: objects with the same equality
+ * requirements, or the same object if its class has none, replace each other until the buffer is
+ * flushed, so an object stored many times between two flushes is written once.
+ *
+ * The buffer is one {@link WritePlan}: a store encodes the object and everything it references
+ * into it, so the flush writes their state at the time of their latest store and doesn't read the
+ * objects, which may change meanwhile. The buffer is flushed when it holds a batch, after the flush
+ * interval and on {@link #close()}. A full buffer blocks the storing thread until the next flush
+ * took the buffered objects.
+ */
+public class MongirlWriteBehind implements Closeable {
+    private final Mongirl mongirl;
+    private final int batchSize;
+    private final int capacity;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notFull = lock.newCondition();
+    private WritePlan buffer;
+
+    /**
+     * The keys of the stored objects in the buffer.
+     */
+    private Set<Object> buffered = new HashSet<>();
+    private boolean closed = false;
+
+    /**
+     * Runs one flush at a time, in the order the buffers were taken.
+     */
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final ScheduledExecutorService flusher;
+
+    private long stores;
+    private long coalesced;
+    private long written;
+    private long failed;
+    private long flushes;
+    private long flushNanos;
+    private long maxFlushNanos;
+    private MongirlStoreException lastFailure;
+
+    MongirlWriteBehind(Mongirl mongirl, int batchSize, long flushIntervalMillis, int capacity) {
+        this.mongirl = mongirl;
+        this.batchSize = Math.max(1, batchSize);
+        this.capacity = Math.max(this.batchSize, capacity);
+        this.buffer = new WritePlan(mongirl);
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "mongirl-write-behind");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = Math.max(1, flushIntervalMillis);
+        flusher.scheduleWithFixedDelay(this::flushQuietly, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Buffers an object to be stored by the next flush, see {@link Mongirl#store(Object)}. Replaces
+     * a buffered object with the same equality requirements. Blocks while the buffer is full.
+     *
+     * @param storageObject the object to store, encoded before this method returns
+     * @throws MongirlStoreException if the object can't be encoded
+     */
+    public void store(Object storageObject) {
+        String collection = Mongirl.collection(storageObject.getClass());
+        if (collection == null) {
+            return;
+        }
+
+        BsonDocument equalityKey = WritePlan.equalityKey(storageObject, mongirl.getDB().getCodecRegistry());
+        Object key = equalityKey == null ? new Identity(storageObject) : new Key(collection, equalityKey);
+
+        lock.lock();
+        try {
+            // The flusher is shut down after closed is set under the lock, so it accepts the flushes
+            while (!closed && buffered.size() >= capacity && !buffered.contains(key)) {
+                flusher.execute(this::flushQuietly);
+                notFull.awaitUninterruptibly();
+            }
+            if (closed) {
+                throw new IllegalStateException("The write-behind buffer is closed");
+            }
+
+            try {
+                buffer.update(storageObject, buffered.size());
+            } catch (RuntimeException exception) {
+                throw exception instanceof MongirlStoreException
+                        ? (MongirlStoreException) exception : new MongirlStoreException(exception.getMessage());
+            }
+            if (!buffered.add(key)) {
+                coalesced++;
+            }
+            stores++;
+            if (buffered.size() == batchSize) {
+                flusher.execute(this::flushQuietly);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes the buffered objects with one bulk write per collection.
+     *
+     * @throws MongirlStoreException if objects couldn't be written, they aren't buffered again
+     */
+    public void flush() {
+        flushLock.lock();
+        try {
+            WritePlan plan;
+            int objects;
+            lock.lock();
+            try {
+                if (buffered.isEmpty()) {
+                    return;
+                }
+                plan = buffer;
+                objects = buffered.size();
+                buffer = new WritePlan(mongirl);
+                buffered = new HashSet<>();
+                notFull.signalAll();
+            } finally {
+                lock.unlock();
+            }
+
+            long start = System.nanoTime();
+            int failures = 0;
+            MongirlStoreException failure = null;
+            try {
+                for (Map.Entry<WritePlan.Entry, String> entry : plan.write().entrySet()) {
+                    if (entry.getKey().item >= 0) {
+                        failures++;
+                    }
+                    failure = new MongirlStoreException(String.format(MongirlStoreException.BULK_WRITE, entry.getValue()));
+                }
+            } catch (RuntimeException exception) {
+                failures = objects;
+                failure = exception instanceof MongirlStoreException
+                        ? (MongirlStoreException) exception : new MongirlStoreException(exception.getMessage());
+            }
+            long duration = System.nanoTime() - start;
+
+            lock.lock();
+            try {
+                flushes++;
+                written += objects - failures;
+                failed += failures;
+                flushNanos += duration;
+                maxFlushNanos = Math.max(maxFlushNanos, duration);
+                if (failure != null) {
+                    lastFailure = failure;
+                }
+            } finally {
+                lock.unlock();
+            }
+
+            if (failure != null) {
+                throw failure;
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Stops the background flushes and writes the buffered objects.
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+
+    /**
+     * @return the counters of the buffer since its creation
+     */
+    public WriteBehindStats getStats() {
+        lock.lock();
+        try {
+            return new WriteBehindStats(stores, coalesced, written, failed, buffered.size(), flushes, flushNanos, maxFlushNanos, lastFailure);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Background flushes can't throw, their failures are counted in the stats.
+     */
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (MongirlStoreException ignored) {
+            // Counted by the flush
+        }
+    }
+
+    private static final class Key {
+        final String collection;
+        final BsonDocument equalityKey;
+
+        Key(String collection, BsonDocument equalityKey) {
+            this.collection = collection;
+            this.equalityKey = equalityKey;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return collection.equals(other.collection) && equalityKey.equals(other.equalityKey);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(collection, equalityKey);
+        }
+    }
+
+    /**
+     * The key of an object without equality requirements, only the object itself is the same document.
+     */
+    private static final class Identity {
+        final Object object;
+
+        Identity(Object object) {
+            this.object = object;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Identity && ((Identity) o).object == object;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(object);
+        }
+    }
+}
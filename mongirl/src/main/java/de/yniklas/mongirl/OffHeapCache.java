@@ -0,0 +1,228 @@
+package de.yniklas.mongirl;
+
+import org.bson.RawBsonDocument;
+import org.bson.types.ObjectId;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Caches the raw BSON of fetched documents outside of the heap, see
+ * {@link Mongirl#enableOffHeapCache(long)}. The documents are appended to direct {@code ByteBuffer}
+ * slabs; only the index of their positions is on the heap, so the garbage collector doesn't have to
+ * trace the cached documents.
+ *
+ * A full cache evicts whole slabs with the clock algorithm: a slab with a hit since the clock
+ * passed it last gets another round, the first slab without one is cleared and written again.
+ */
+final class OffHeapCache {
+    private static final int MAX_SLAB_SIZE = 64 * 1024 * 1024;
+    private static final int MIN_SLAB_SIZE = 1024 * 1024;
+
+    /**
+     * The number of slabs of a cache unless they would get smaller than {@link #MIN_SLAB_SIZE}, so an
+     * eviction drops a small part of the cache.
+     */
+    private static final int MIN_SLABS = 8;
+
+    private final int slabSize;
+    private final Slab[] slabs;
+    private int allocated = 0;
+    private int current = -1;
+    private int hand = 0;
+
+    private final Map<Key, Location> index = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param capacity the maximum number of bytes of all slabs, allocated when they are needed
+     */
+    OffHeapCache(long capacity) {
+        capacity = Math.max(1, capacity);
+        long targetSize = Math.min(MAX_SLAB_SIZE, Math.max(MIN_SLAB_SIZE, capacity / MIN_SLABS));
+        // The slab count is rounded up and the slabs shrunk to it, so they don't exceed the capacity
+        long count = Math.min(Integer.MAX_VALUE, (capacity + targetSize - 1) / targetSize);
+        this.slabSize = (int) (capacity / count);
+        this.slabs = new Slab[(int) count];
+    }
+
+    /**
+     * @return the cached document or null if it isn't cached
+     */
+    RawBsonDocument get(String collection, ObjectId id) {
+        byte[] bytes;
+        lock.readLock().lock();
+        try {
+            Location location = index.get(new Key(collection, id));
+            if (location == null) {
+                misses.increment();
+                return null;
+            }
+
+            Slab slab = slabs[location.slab];
+            slab.referenced = true;
+            bytes = new byte[location.length];
+            slab.buffer.get(location.offset, bytes);
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        hits.increment();
+        return new RawBsonDocument(bytes);
+    }
+
+    /**
+     * Caches a fetched document, documents larger than a slab aren't cached.
+     */
+    void put(String collection, ObjectId id, RawBsonDocument document) {
+        ByteBuffer bytes = document.getByteBuffer().asNIO();
+        int length = bytes.remaining();
+        if (length > slabSize) {
+            return;
+        }
+
+        lock.writeLock().lock();
+        try {
+            if (current < 0 || slabs[current].position + length > slabSize) {
+                current = nextSlab();
+            }
+
+            Slab slab = slabs[current];
+            slab.buffer.put(slab.position, bytes, bytes.position(), length);
+            Key key = new Key(collection, id);
+            index.put(key, new Location(current, slab.position, length));
+            slab.keys.add(key);
+            slab.position += length;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void invalidate(String collection, ObjectId id) {
+        lock.writeLock().lock();
+        try {
+            index.remove(new Key(collection, id));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void invalidateAll() {
+        lock.writeLock().lock();
+        try {
+            index.clear();
+            for (int i = 0; i < allocated; i++) {
+                slabs[i].clear();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    CacheStats stats() {
+        return new CacheStats(hits.sum(), misses.sum(), evictions.sum());
+    }
+
+    /**
+     * Returns an empty slab to write to, allocating a new one while the capacity allows it and
+     * evicting one otherwise.
+     */
+    private int nextSlab() {
+        if (allocated < slabs.length) {
+            slabs[allocated] = new Slab(ByteBuffer.allocateDirect(slabSize));
+            return allocated++;
+        }
+
+        // Every slab gets a second chance, so at most one round passes before a slab is evicted
+        while (slabs[hand].referenced && hand != current) {
+            slabs[hand].referenced = false;
+            hand = (hand + 1) % slabs.length;
+        }
+        if (hand == current) {
+            hand = (hand + 1) % slabs.length;
+        }
+
+        int evicted = hand;
+        hand = (hand + 1) % slabs.length;
+        for (Key key : slabs[evicted].keys) {
+            Location location = index.get(key);
+            if (location != null && location.slab == evicted) {
+                index.remove(key);
+                evictions.increment();
+            }
+        }
+        slabs[evicted].clear();
+        return evicted;
+    }
+
+    private static final class Slab {
+        final ByteBuffer buffer;
+        final List<Key> keys = new ArrayList<>();
+        int position = 0;
+
+        /**
+         * Whether a document of the slab was read since the clock passed it.
+         */
+        volatile boolean referenced = false;
+
+        Slab(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        void clear() {
+            keys.clear();
+            position = 0;
+            referenced = false;
+        }
+    }
+
+    private static final class Location {
+        final int slab;
+        final int offset;
+        final int length;
+
+        Location(int slab, int offset, int length) {
+            this.slab = slab;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    private static final class Key {
+        final String collection;
+        final ObjectId id;
+
+        Key(String collection, ObjectId id) {
+            this.collection = collection;
+            this.id = id;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return collection.equals(other.collection) && id.equals(other.id);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(collection, id);
+        }
+    }
+}
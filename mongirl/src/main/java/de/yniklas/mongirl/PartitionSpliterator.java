@@ -0,0 +1,168 @@
+package de.yniklas.mongirl;
+
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.Sorts;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+
+import java.math.BigInteger;
+import java.util.Queue;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * Spliterator over all stored objects of a class with {@code _id}s in a range. Splitting halves
+ * the range, so every partition has its own cursor and decodes its documents on the thread which
+ * traverses it. The ranges are split until the estimated number of objects of a partition fits
+ * into one batch.
+ *
+ * @param <T> the type of the decoded objects
+ */
+final class PartitionSpliterator<T> implements Spliterator<T> {
+    /**
+     * ObjectIds are 12 bytes, so all ids are below this bound.
+     */
+    private static final BigInteger ID_BOUND = BigInteger.ONE.shiftLeft(96);
+
+    private final Mongirl mongirl;
+    private final Class<T> targetClass;
+    private final int batchSize;
+    private final Set<ObjectId> excluded;
+
+    /**
+     * The cursors opened by all partitions of the scan, to close them with the scan.
+     */
+    private final Queue<MongirlCursor<?>> cursors;
+
+    /**
+     * The range of the partition, the lower bound inclusive, the upper bound exclusive.
+     */
+    private BigInteger lower;
+    private final BigInteger upper;
+    private long estimate;
+
+    private MongirlCursor<T> cursor;
+
+    private PartitionSpliterator(Mongirl mongirl, Class<T> targetClass, int batchSize, Set<ObjectId> excluded,
+                                 Queue<MongirlCursor<?>> cursors, BigInteger lower, BigInteger upper, long estimate) {
+        this.mongirl = mongirl;
+        this.targetClass = targetClass;
+        this.batchSize = Math.max(1, batchSize);
+        this.excluded = excluded;
+        this.cursors = cursors;
+        this.lower = lower;
+        this.upper = upper;
+        this.estimate = estimate;
+    }
+
+    /**
+     * Creates a spliterator over all objects of a class, ranging from the lowest to the highest
+     * stored {@code _id}.
+     *
+     * @param batchSize the number of documents fetched and decoded at once
+     * @param excluded ids of objects to leave out
+     * @param cursors collects the opened cursors
+     * @return the spliterator
+     */
+    static <T> PartitionSpliterator<T> of(Mongirl mongirl, Class<T> targetClass, int batchSize,
+                                          Set<ObjectId> excluded, Queue<MongirlCursor<?>> cursors) {
+        String collection = Mongirl.collection(targetClass);
+        if (collection == null) {
+            return new PartitionSpliterator<>(mongirl, targetClass, batchSize, excluded, cursors,
+                    BigInteger.ZERO, BigInteger.ZERO, 0);
+        }
+
+        Document first = mongirl.getDB().getCollection(collection).find()
+                .projection(Projections.include("_id")).sort(Sorts.ascending("_id")).first();
+        Document last = mongirl.getDB().getCollection(collection).find()
+                .projection(Projections.include("_id")).sort(Sorts.descending("_id")).first();
+        if (first == null || last == null) {
+            return new PartitionSpliterator<>(mongirl, targetClass, batchSize, excluded, cursors,
+                    BigInteger.ZERO, BigInteger.ZERO, 0);
+        }
+
+        return new PartitionSpliterator<>(mongirl, targetClass, batchSize, excluded, cursors,
+                toNumber(first.getObjectId("_id")), toNumber(last.getObjectId("_id")).add(BigInteger.ONE),
+                mongirl.getDB().getCollection(collection).estimatedDocumentCount());
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+        if (cursor == null) {
+            if (lower.compareTo(upper) >= 0) {
+                return false;
+            }
+            cursor = mongirl.iterate(targetClass, rangeFilter(), batchSize, excluded);
+            cursors.add(cursor);
+        }
+
+        while (cursor.hasNext()) {
+            T next = cursor.next();
+            // Objects which couldn't be instantiated are left out, the partitions are NONNULL
+            if (next != null) {
+                action.accept(next);
+                return true;
+            }
+        }
+
+        cursor.close();
+        cursor = null;
+        lower = upper;
+        return false;
+    }
+
+    @Override
+    public Spliterator<T> trySplit() {
+        // Started partitions and small ones aren't split anymore
+        if (cursor != null || estimate <= batchSize) {
+            return null;
+        }
+
+        BigInteger middle = lower.add(upper).shiftRight(1);
+        if (middle.compareTo(lower) <= 0) {
+            return null;
+        }
+
+        long half = estimate / 2;
+        PartitionSpliterator<T> prefix = new PartitionSpliterator<>(mongirl, targetClass, batchSize, excluded,
+                cursors, lower, middle, half);
+        lower = middle;
+        estimate -= half;
+        return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+        return estimate;
+    }
+
+    @Override
+    public int characteristics() {
+        // The collection may change while it's scanned, the partitions see such changes or not
+        return NONNULL | CONCURRENT;
+    }
+
+    private Bson rangeFilter() {
+        Bson from = Filters.gte("_id", toObjectId(lower));
+        if (upper.compareTo(ID_BOUND) >= 0) {
+            return from;
+        }
+        return Filters.and(from, Filters.lt("_id", toObjectId(upper)));
+    }
+
+    private static BigInteger toNumber(ObjectId id) {
+        return new BigInteger(1, id.toByteArray());
+    }
+
+    private static ObjectId toObjectId(BigInteger number) {
+        byte[] value = number.toByteArray();
+        byte[] bytes = new byte[12];
+        // toByteArray may add a leading sign byte or return less than 12 bytes
+        int length = Math.min(value.length, bytes.length);
+        System.arraycopy(value, value.length - length, bytes, bytes.length - length, length);
+        return new ObjectId(bytes);
+    }
+}
@@ -0,0 +1,59 @@
+package de.yniklas.mongirl;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Adapts the {@code Publisher}s of the reactive driver to {@code CompletableFuture}s.
+ */
+final class Publishers {
+    private Publishers() {
+    }
+
+    /**
+     * Subscribes to the publisher and collects all published items.
+     *
+     * @return a future completed with the items once the publisher completes
+     */
+    static <T> CompletableFuture<List<T>> all(Publisher<T> publisher) {
+        CompletableFuture<List<T>> future = new CompletableFuture<>();
+        publisher.subscribe(new Subscriber<T>() {
+            private final List<T> items = new ArrayList<>();
+
+            @Override
+            public void onSubscribe(Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(T item) {
+                items.add(item);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                future.completeExceptionally(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                future.complete(items);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Subscribes to a publisher of at most one item.
+     *
+     * @return a future completed with the item or null if there is none
+     */
+    static <T> CompletableFuture<T> first(Publisher<T> publisher) {
+        return all(publisher).thenApply(items -> items.isEmpty() ? null : items.get(0));
+    }
+}
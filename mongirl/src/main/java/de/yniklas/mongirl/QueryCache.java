@@ -0,0 +1,134 @@
+package de.yniklas.mongirl;
+
+import org.bson.BsonDocument;
+import org.bson.types.ObjectId;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches the id of the first document matching a filter of
+ * {@link Mongirl#decodeFromFilters(Class, Pair...)}, see {@link Mongirl#queryCacheSize}. Filters
+ * without a match are cached as well. All results of a collection are invalidated when Mongirl
+ * writes to it: every result holds the version of its collection at the time of its query, results
+ * of an older version are misses.
+ */
+final class QueryCache {
+    /**
+     * The cached result of a filter without a match.
+     */
+    static final Object NONE = new Object();
+
+    private final Mongirl mongirl;
+    private final Map<Key, Result> results;
+
+    /**
+     * Incremented by every write per collection. A result queried before a write isn't returned, as
+     * it may be outdated.
+     */
+    private final Map<String, AtomicLong> versions = new ConcurrentHashMap<>();
+
+    QueryCache(Mongirl mongirl) {
+        this.mongirl = mongirl;
+        this.results = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Result> eldest) {
+                return size() > mongirl.queryCacheSize;
+            }
+        });
+    }
+
+    boolean isEnabled() {
+        return mongirl.queryCacheSize > 0;
+    }
+
+    /**
+     * @param filter the rendered filter
+     * @return the cached id, {@link #NONE} if the filter has no match or null if nothing is cached
+     */
+    Object get(String collection, BsonDocument filter) {
+        Key key = new Key(collection, filter);
+        Result result = results.get(key);
+        if (result == null) {
+            return null;
+        }
+
+        if (result.version != version(collection) || mongirl.queryCacheExpireMillis > 0
+                && System.nanoTime() - result.cached > mongirl.queryCacheExpireMillis * 1_000_000L) {
+            results.remove(key, result);
+            return null;
+        }
+        return result.id == null ? NONE : result.id;
+    }
+
+    /**
+     * @param id the id of the first match, null if there is none
+     * @param since the {@link #version(String)} before the query, the result is a miss once a write
+     *              incremented it
+     */
+    void put(String collection, BsonDocument filter, ObjectId id, long since) {
+        if (version(collection) == since) {
+            results.put(new Key(collection, filter), new Result(id, System.nanoTime(), since));
+        }
+    }
+
+    long version(String collection) {
+        return versions.computeIfAbsent(collection, key -> new AtomicLong()).get();
+    }
+
+    /**
+     * Invalidates the results of a collection written to, they are removed by their next
+     * {@link #get(String, BsonDocument)} or evicted.
+     */
+    void invalidate(String collection) {
+        versions.computeIfAbsent(collection, key -> new AtomicLong()).incrementAndGet();
+    }
+
+    void clear() {
+        versions.values().forEach(AtomicLong::incrementAndGet);
+        results.clear();
+    }
+
+    private static final class Result {
+        final ObjectId id;
+        final long cached;
+        final long version;
+
+        Result(ObjectId id, long cached, long version) {
+            this.id = id;
+            this.cached = cached;
+            this.version = version;
+        }
+    }
+
+    private static final class Key {
+        final String collection;
+        final BsonDocument filter;
+
+        Key(String collection, BsonDocument filter) {
+            this.collection = collection;
+            this.filter = filter;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return collection.equals(other.collection) && filter.equals(other.filter);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(collection, filter);
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package de.yniklas.mongirl;
+
+import org.bson.BsonBinaryReader;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.DocumentCodec;
+import org.bson.types.ObjectId;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A local, memory-mapped copy of the documents of some collections, see
+ * {@link Mongirl#loadSnapshot(Path)}. The file holds the raw BSON of the documents followed by an
+ * index of their ids, offsets and lengths per collection:
+ *
+ * <pre>
+ * header:     int magic, int version, long index offset
+ * documents:  the raw BSON documents of all collections
+ * index:      int collections, per collection: int name length, name (UTF-8), int documents,
+ *             per document: 12 bytes id, int offset, int length
+ * </pre>
+ *
+ * Documents are read from the mapped file without copying them, a snapshot is limited to 2 GB.
+ */
+final class Snapshot {
+    private static final int MAGIC = 0x4d47534e;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+
+    private final MappedByteBuffer data;
+
+    /**
+     * The offset and length of the documents by collection and id, packed into one long.
+     */
+    private final Map<String, Map<ObjectId, Long>> index;
+
+    /**
+     * The collections still read from the snapshot.
+     */
+    private final Set<String> served = ConcurrentHashMap.newKeySet();
+
+    private Snapshot(MappedByteBuffer data, Map<String, Map<ObjectId, Long>> index) {
+        this.data = data;
+        this.index = index;
+        served.addAll(index.keySet());
+    }
+
+    /**
+     * Writes the documents of the collections to a snapshot file. The file is written next to the
+     * target and moved over it, so a running reader never sees a partial snapshot.
+     */
+    static void write(Mongirl mongirl, Path file, Collection<String> collections) throws IOException {
+        Path temp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.position(HEADER_SIZE);
+
+            Map<String, List<long[]>> entries = new LinkedHashMap<>();
+            Map<String, List<ObjectId>> ids = new LinkedHashMap<>();
+            for (String collection : collections) {
+                List<long[]> positions = entries.computeIfAbsent(collection, key -> new ArrayList<>());
+                List<ObjectId> collectionIds = ids.computeIfAbsent(collection, key -> new ArrayList<>());
+                for (RawBsonDocument document : mongirl.getDB().getCollection(collection, RawBsonDocument.class).find()) {
+                    ByteBuffer bytes = document.getByteBuffer().asNIO();
+                    positions.add(new long[] {channel.position(), bytes.remaining()});
+                    collectionIds.add(DecodeContext.idOf(document));
+                    while (bytes.hasRemaining()) {
+                        channel.write(bytes);
+                    }
+                }
+            }
+
+            long indexOffset = channel.position();
+            ByteBuffer index = ByteBuffer.allocate(64 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+            index.putInt(entries.size());
+            for (Map.Entry<String, List<long[]>> collection : entries.entrySet()) {
+                byte[] name = collection.getKey().getBytes(StandardCharsets.UTF_8);
+                index = ensure(channel, index, 8 + name.length);
+                index.putInt(name.length).put(name).putInt(collection.getValue().size());
+
+                List<ObjectId> collectionIds = ids.get(collection.getKey());
+                for (int i = 0; i < collectionIds.size(); i++) {
+                    long[] position = collection.getValue().get(i);
+                    index = ensure(channel, index, 20);
+                    index.put(collectionIds.get(i).toByteArray()).putInt((int) position[0]).putInt((int) position[1]);
+                }
+            }
+            flush(channel, index);
+
+            if (channel.position() > Integer.MAX_VALUE) {
+                throw new IOException("Snapshots are limited to 2 GB");
+            }
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putLong(indexOffset).flip();
+            channel.position(0);
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+            channel.force(true);
+        } catch (IOException | RuntimeException exception) {
+            Files.deleteIfExists(temp);
+            throw exception;
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Maps a snapshot file and reads its index.
+     */
+    static Snapshot load(Path file) throws IOException {
+        MappedByteBuffer data;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Snapshots are limited to 2 GB");
+            }
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        data.order(ByteOrder.LITTLE_ENDIAN);
+
+        if (data.limit() < HEADER_SIZE || data.getInt(0) != MAGIC || data.getInt(4) != VERSION) {
+            throw new IOException("Not a snapshot of this version");
+        }
+
+        Map<String, Map<ObjectId, Long>> index = new LinkedHashMap<>();
+        ByteBuffer reader = data.duplicate().order(ByteOrder.LITTLE_ENDIAN).position((int) data.getLong(8));
+        int collections = reader.getInt();
+        for (int c = 0; c < collections; c++) {
+            byte[] name = new byte[reader.getInt()];
+            reader.get(name);
+            int documents = reader.getInt();
+
+            Map<ObjectId, Long> positions = new LinkedHashMap<>((int) (documents / 0.75f) + 1);
+            byte[] id = new byte[12];
+            for (int i = 0; i < documents; i++) {
+                reader.get(id);
+                long offset = reader.getInt() & 0xffffffffL;
+                long length = reader.getInt() & 0xffffffffL;
+                positions.put(new ObjectId(id), offset << 32 | length);
+            }
+            index.put(new String(name, StandardCharsets.UTF_8), positions);
+        }
+        return new Snapshot(data, index);
+    }
+
+    /**
+     * @return the collections in the snapshot
+     */
+    Set<String> collections() {
+        return Collections.unmodifiableSet(index.keySet());
+    }
+
+    /**
+     * @return whether the documents of the collection are read from the snapshot
+     */
+    boolean serves(String collection) {
+        return served.contains(collection);
+    }
+
+    /**
+     * Stops reading a collection from the snapshot, e.g. because it was written to.
+     */
+    void retire(String collection) {
+        served.remove(collection);
+    }
+
+    /**
+     * Returns a document of the snapshot, see {@link #document(long, DocumentCodec)}.
+     *
+     * @return the document or null if it isn't in the snapshot or the collection is retired
+     */
+    Object get(String collection, ObjectId id, DocumentCodec codec) {
+        if (!served.contains(collection)) {
+            return null;
+        }
+
+        Long position = index.get(collection).get(id);
+        return position == null ? null : document(position, codec);
+    }
+
+    /**
+     * Returns all documents of a collection in the snapshot in the order they were read.
+     *
+     * @return the documents by their ids, see {@link #document(long, DocumentCodec)}
+     */
+    Map<ObjectId, Object> documents(String collection, DocumentCodec codec) {
+        Map<ObjectId, Object> documents = new LinkedHashMap<>();
+        index.get(collection).forEach((id, position) -> documents.put(id, document(position, codec)));
+        return documents;
+    }
+
+    /**
+     * @param codec decodes the document directly from the mapped file to a {@code Document}, null
+     *              to return a {@code ByteBuffer} view on the mapped file for the codecs of Mongirl
+     */
+    private Object document(long position, DocumentCodec codec) {
+        ByteBuffer slice = data.slice((int) (position >>> 32), (int) position).order(ByteOrder.LITTLE_ENDIAN);
+        if (codec == null) {
+            return slice;
+        }
+        return codec.decode(new BsonBinaryReader(slice), DecoderContext.builder().build());
+    }
+
+    private static ByteBuffer ensure(FileChannel channel, ByteBuffer buffer, int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            flush(channel, buffer);
+            buffer.clear();
+        }
+        return buffer;
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
@@ -10,4 +10,11 @@ import java.lang.annotation.Target;
 public @interface Store {
     String collection();
     boolean addClasspath() default false;
+
+    /**
+     * Derives the _id of the documents from the values of the equality requirements, so stores
+     * and references don't have to look up the ids of stored objects. Only enable it for
+     * collections whose documents are all stored with it.
+     */
+    boolean deterministicId() default false;
 }
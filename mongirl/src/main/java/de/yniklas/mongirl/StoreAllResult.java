@@ -0,0 +1,49 @@
+package de.yniklas.mongirl;
+
+import de.yniklas.mongirl.exception.MongirlStoreException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The outcome of {@link Mongirl#storeAll(java.util.Iterator, int, int)}: the id of every stored
+ * object in the order of the input and the failures by the index of the object.
+ */
+public class StoreAllResult {
+    private final List<Object> ids = new ArrayList<>();
+    private final Map<Integer, MongirlStoreException> failures = new TreeMap<>();
+
+    void add(Object id) {
+        ids.add(id);
+    }
+
+    void fail(MongirlStoreException failure) {
+        failures.put(ids.size(), failure);
+        ids.add(null);
+    }
+
+    /**
+     * @return the ids of the objects in the order of the input, like {@link Mongirl#store(Object)}
+     *         returns them. Null for failed objects and objects of classes which aren't stored.
+     */
+    public List<Object> getIds() {
+        return Collections.unmodifiableList(ids);
+    }
+
+    /**
+     * @return the failures by the index of the object in the input
+     */
+    public Map<Integer, MongirlStoreException> getFailures() {
+        return Collections.unmodifiableMap(failures);
+    }
+
+    /**
+     * @return whether all objects were stored
+     */
+    public boolean isSuccessful() {
+        return failures.isEmpty();
+    }
+}
@@ -0,0 +1,147 @@
+package de.yniklas.mongirl;
+
+import de.yniklas.mongirl.exception.MongirlStoreException;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Stores the objects of an iterator batch by batch. The calling thread reads the input into
+ * batches, worker threads plan and encode them (see {@link WritePlan}) and the calling thread
+ * writes the planned batches in the order of the input. At most two batches per worker are read
+ * ahead, so memory is bounded by the batch size, not by the size of the input.
+ *
+ * Writing the batches one after another lets every batch see the documents of the previous ones,
+ * so objects with the same equality requirements in different batches are stored once.
+ */
+final class StorePipeline {
+    private final Mongirl mongirl;
+    private final int batchSize;
+    private final int threads;
+
+    StorePipeline(Mongirl mongirl, int batchSize, int threads) {
+        this.mongirl = mongirl;
+        this.batchSize = Math.max(1, batchSize);
+        this.threads = Math.max(1, threads);
+    }
+
+    StoreAllResult run(Iterator<?> objects) {
+        StoreAllResult result = new StoreAllResult();
+        ExecutorService encoders = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "mongirl-store");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        Deque<Pending> inFlight = new ArrayDeque<>();
+        try {
+            while (objects.hasNext()) {
+                List<Object> items = new ArrayList<>(batchSize);
+                while (items.size() < batchSize && objects.hasNext()) {
+                    items.add(objects.next());
+                }
+                inFlight.add(new Pending(items.size(), encoders.submit(() -> plan(items))));
+
+                // Backpressure: the input isn't read further until the oldest batch is written
+                if (inFlight.size() >= 2 * threads) {
+                    write(inFlight.poll(), result);
+                }
+            }
+
+            while (!inFlight.isEmpty()) {
+                write(inFlight.poll(), result);
+            }
+        } finally {
+            encoders.shutdownNow();
+        }
+        return result;
+    }
+
+    /**
+     * Plans the writes of a batch, objects which can't be encoded fail on their own.
+     */
+    private Batch plan(List<Object> items) {
+        Batch batch = new Batch(new WritePlan(mongirl), items.size());
+        for (int i = 0; i < items.size(); i++) {
+            try {
+                batch.roots[i] = batch.plan.add(items.get(i), i);
+            } catch (RuntimeException exception) {
+                batch.failures.put(i, new MongirlStoreException(exception.getMessage()));
+            }
+        }
+        return batch;
+    }
+
+    private void write(Pending pending, StoreAllResult result) {
+        Batch batch;
+        try {
+            batch = pending.batch.get();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new MongirlStoreException(exception.getMessage());
+        } catch (ExecutionException exception) {
+            failAll(pending.size, exception.getCause(), result);
+            return;
+        }
+
+        try {
+            batch.plan.write().forEach((entry, message) -> {
+                if (entry.item >= 0) {
+                    batch.failures.putIfAbsent(entry.item,
+                            new MongirlStoreException(String.format(MongirlStoreException.BULK_WRITE, message)));
+                }
+            });
+        } catch (RuntimeException exception) {
+            // Failures of single writes are returned per entry, this is thrown before anything is written
+            failAll(pending.size, exception, result);
+            return;
+        }
+
+        for (int i = 0; i < pending.size; i++) {
+            MongirlStoreException failure = batch.failures.get(i);
+            if (failure != null) {
+                result.fail(failure);
+            } else {
+                result.add(WritePlan.idOf(batch.roots[i]));
+            }
+        }
+    }
+
+    private static void failAll(int size, Throwable cause, StoreAllResult result) {
+        MongirlStoreException failure = cause instanceof MongirlStoreException
+                ? (MongirlStoreException) cause : new MongirlStoreException(cause.getMessage());
+        for (int i = 0; i < size; i++) {
+            result.fail(failure);
+        }
+    }
+
+    private static final class Pending {
+        final int size;
+        final Future<Batch> batch;
+
+        Pending(int size, Future<Batch> batch) {
+            this.size = size;
+            this.batch = batch;
+        }
+    }
+
+    private static final class Batch {
+        final WritePlan plan;
+        final WritePlan.Entry[] roots;
+        final Map<Integer, MongirlStoreException> failures = new HashMap<>();
+
+        Batch(WritePlan plan, int size) {
+            this.plan = plan;
+            this.roots = new WritePlan.Entry[size];
+        }
+    }
+}
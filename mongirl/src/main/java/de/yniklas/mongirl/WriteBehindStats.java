@@ -0,0 +1,116 @@
+package de.yniklas.mongirl;
+
+import de.yniklas.mongirl.exception.MongirlStoreException;
+
+/**
+ * Counters of a {@link MongirlWriteBehind} buffer since its creation.
+ */
+public class WriteBehindStats {
+    private final long stores;
+    private final long coalesced;
+    private final long written;
+    private final long failed;
+    private final int buffered;
+    private final long flushes;
+    private final long flushNanos;
+    private final long maxFlushNanos;
+    private final MongirlStoreException lastFailure;
+
+    WriteBehindStats(long stores, long coalesced, long written, long failed, int buffered, long flushes,
+                     long flushNanos, long maxFlushNanos, MongirlStoreException lastFailure) {
+        this.stores = stores;
+        this.coalesced = coalesced;
+        this.written = written;
+        this.failed = failed;
+        this.buffered = buffered;
+        this.flushes = flushes;
+        this.flushNanos = flushNanos;
+        this.maxFlushNanos = maxFlushNanos;
+        this.lastFailure = lastFailure;
+    }
+
+    /**
+     * @return the number of stored objects
+     */
+    public long getStores() {
+        return stores;
+    }
+
+    /**
+     * @return the number of stores which replaced a buffered object instead of adding one
+     */
+    public long getCoalesced() {
+        return coalesced;
+    }
+
+    /**
+     * @return the number of objects written by the flushes
+     */
+    public long getWritten() {
+        return written;
+    }
+
+    /**
+     * @return the number of objects the flushes couldn't write
+     */
+    public long getFailed() {
+        return failed;
+    }
+
+    /**
+     * @return the number of objects waiting for the next flush
+     */
+    public int getBuffered() {
+        return buffered;
+    }
+
+    /**
+     * @return the share of the stores which replaced a buffered object, between 0 and 1
+     */
+    public double getCoalescingRatio() {
+        return stores == 0 ? 0 : (double) coalesced / stores;
+    }
+
+    /**
+     * @return the number of flushes which wrote objects
+     */
+    public long getFlushes() {
+        return flushes;
+    }
+
+    /**
+     * @return the average duration of a flush in milliseconds
+     */
+    public double getAverageFlushMillis() {
+        return flushes == 0 ? 0 : flushNanos / 1e6 / flushes;
+    }
+
+    /**
+     * @return the longest duration of a flush in milliseconds
+     */
+    public double getMaxFlushMillis() {
+        return maxFlushNanos / 1e6;
+    }
+
+    /**
+     * @return the failure of the last flush which couldn't write all objects, null if there is none
+     */
+    public MongirlStoreException getLastFailure() {
+        return lastFailure;
+    }
+
+    @Override
+    public String toString() {
+        return "WriteBehindStats{" +
+                "stores=" + stores +
+                ", coalesced=" + coalesced +
+                ", written=" + written +
+                ", failed=" + failed +
+                ", buffered=" + buffered +
+                ", coalescingRatio=" + getCoalescingRatio() +
+                ", flushes=" + flushes +
+                ", averageFlushMillis=" + getAverageFlushMillis() +
+                ", maxFlushMillis=" + getMaxFlushMillis() +
+                '}';
+    }
+}
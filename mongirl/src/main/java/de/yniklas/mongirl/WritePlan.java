@@ -0,0 +1,670 @@
+package de.yniklas.mongirl;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.MongoException;
+import com.mongodb.MongoWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.bulk.BulkWriteUpsert;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.FindOneAndReplaceOptions;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.ReturnDocument;
+import de.yniklas.mongirl.exception.MongirlStoreException;
+import org.bson.BsonArray;
+import org.bson.BsonBinaryWriter;
+import org.bson.BsonDocument;
+import org.bson.BsonNull;
+import org.bson.BsonObjectId;
+import org.bson.BsonString;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.BsonDocumentCodec;
+import org.bson.codecs.EncoderContext;
+import org.bson.codecs.configuration.CodecConfigurationException;
+import org.bson.codecs.configuration.CodecRegistry;
+import org.bson.conversions.Bson;
+import org.bson.io.BasicOutputBuffer;
+import org.bson.types.ObjectId;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * The writes of one store operation. The object graph is collected and encoded first, every new
+ * object with a provisional id assigned on the client. Then the ids are resolved with one query
+ * per collection and 1000 objects: objects matching a stored document by their equality
+ * requirements take over its id, the references to them are replaced in the encoded documents. Finally
+ * the documents are written with one unordered {@code bulkWrite} per collection. Objects of classes
+ * with {@link Store#deterministicId()} get their final id on the client and aren't looked up.
+ *
+ * Objects are identified by identity, so shared objects and cycles are written once, with the
+ * final ids of all their references.
+ */
+final class WritePlan {
+    private static final int DUPLICATE_KEY = 11000;
+
+    private final Mongirl mongirl;
+
+    /**
+     * The entries of the visited objects of the graph.
+     */
+    private final Map<Object, Entry> entriesByObject = new IdentityHashMap<>();
+
+    /**
+     * The entries by collection and, for objects with equality requirements, by their values.
+     */
+    private final Map<String, List<Entry>> entries = new LinkedHashMap<>();
+    private final Map<String, Map<BsonDocument, Entry>> entriesByKey = new HashMap<>();
+
+    /**
+     * The entries referenced by other entries in upsert mode, their ids are resolved before writing.
+     */
+    private final Set<Entry> referenced = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    /**
+     * Whether a write failed because another writer inserted a document with the same equality
+     * requirements concurrently.
+     */
+    private boolean duplicateKey = false;
+
+    /**
+     * The index of the item new entries belong to, see {@link #add(Object, int)}.
+     */
+    private int item = -1;
+
+    /**
+     * The objects encoded by the running {@link #update(Object, int)}, null outside of it.
+     */
+    private Set<Object> updated;
+
+    WritePlan(Mongirl mongirl) {
+        this.mongirl = mongirl;
+    }
+
+    /**
+     * Adds an object and everything it references to the plan.
+     *
+     * @return the entry of the object or null if its class isn't stored
+     */
+    Entry add(Object storageObject) {
+        boolean visited = updated == null ? entriesByObject.containsKey(storageObject) : !updated.add(storageObject);
+        if (visited) {
+            return entriesByObject.get(storageObject);
+        }
+
+        String collection = Mongirl.collection(storageObject.getClass());
+        if (collection == null) {
+            return null;
+        }
+
+        // Objects with the same equality requirements are the same document, the last one is written
+        BsonDocument key = equalityKey(storageObject, mongirl.getDB().getCodecRegistry());
+        Entry entry = key == null ? entriesByObject.get(storageObject)
+                : entriesByKey.computeIfAbsent(collection, name -> new HashMap<>()).get(key);
+        if (entry == null) {
+            entry = new Entry(key, item);
+            if (key != null && ClassMapping.of(storageObject.getClass()).deterministicId) {
+                entry.id = deterministicId(collection, key);
+                entry.deterministic = true;
+            }
+            entry.provisional = entry.id;
+            entries.computeIfAbsent(collection, name -> new ArrayList<>()).add(entry);
+            if (key != null) {
+                entriesByKey.get(collection).put(key, entry);
+            }
+        }
+
+        // Visited before its references, so references back to it end the traversal
+        entriesByObject.put(storageObject, entry);
+
+        List<Entry> references = new ArrayList<>();
+        Object document = encode(storageObject, (fieldKey, referenced, element) -> {
+            Entry referencedEntry = add(referenced);
+            if (referencedEntry == null) {
+                return null;
+            }
+            references.add(referencedEntry);
+            return referencedEntry.id;
+        });
+
+        entry.object = storageObject;
+        entry.document = document;
+        entry.references = references;
+        return entry;
+    }
+
+    /**
+     * Adds an object of a batch to the plan, see {@link #add(Object)}. Failed writes of new
+     * entries are reported with the index of the item.
+     *
+     * @param item the index of the object in its batch
+     */
+    Entry add(Object storageObject, int item) {
+        this.item = item;
+        try {
+            return add(storageObject);
+        } finally {
+            this.item = -1;
+        }
+    }
+
+    /**
+     * Adds an object to the plan again, see {@link #add(Object, int)}. It and everything it
+     * references are encoded in their current state even if they were added before, an object
+     * whose equality requirements changed since becomes another entry. The plan doesn't read the
+     * objects afterwards, so they may change before it is written.
+     */
+    Entry update(Object storageObject, int item) {
+        updated = Collections.newSetFromMap(new IdentityHashMap<>());
+        try {
+            return add(storageObject, item);
+        } finally {
+            updated = null;
+        }
+    }
+
+    /**
+     * Resolves the ids of all planned objects and writes them.
+     *
+     * @throws MongirlStoreException if a write fails or a value can't be encoded
+     */
+    void execute() {
+        Map<Entry, String> failures = write();
+        if (!failures.isEmpty()) {
+            throw new MongirlStoreException(String.format(MongirlStoreException.BULK_WRITE, failures.values().iterator().next()));
+        }
+    }
+
+    /**
+     * Resolves the ids of all planned objects and writes them. The writes of all collections are
+     * attempted, failed ones are returned.
+     *
+     * @return the error messages of the failed writes by their entries, the other entries are written
+     * @throws MongirlStoreException if a value can't be encoded
+     */
+    Map<Entry, String> write() {
+        if (mongirl.upsertMode) {
+            for (List<Entry> collectionEntries : entries.values()) {
+                for (Entry entry : collectionEntries) {
+                    referenced.addAll(entry.references);
+                }
+            }
+            entries.forEach(this::ensureUniqueIndexes);
+        }
+
+        try {
+            Map<Entry, String> failures = writeAll();
+            if (duplicateKey) {
+                // Another writer inserted a looked up object in the meantime, its id is known now
+                duplicateKey = false;
+                try {
+                    failures = writeAll();
+                } catch (MongoException exception) {
+                    // The lookups of the retry failed before it wrote, the first attempt stands
+                }
+            }
+            return failures;
+        } catch (CodecConfigurationException exception) {
+            throw new MongirlStoreException(String.format(MongirlStoreException.NO_CODEC, exception.getMessage()));
+        }
+    }
+
+    private Map<Entry, String> writeAll() {
+        entries.forEach(this::resolveIds);
+
+        Map<Entry, String> failures = new HashMap<>();
+        entries.forEach((collection, collectionEntries) -> {
+            List<Entry> byId = new ArrayList<>();
+            List<Entry> byKey = new ArrayList<>();
+            for (Entry entry : collectionEntries) {
+                // Objects which couldn't be encoded aren't written
+                if (entry.document != null) {
+                    (upserted(entry) ? byKey : byId).add(entry);
+                    // Added before the write, so concurrent stores don't miss the document
+                    mongirl.addExisting(collection, entry.key);
+                }
+            }
+
+            if (mongirl.codecMode) {
+                write(mongirl.getDB().getCollection(collection, RawBsonDocument.class), collection, byId, byKey, failures);
+            } else {
+                write(mongirl.getDB().getCollection(collection), collection, byId, byKey, failures);
+            }
+
+            // Cached documents, query results and the snapshot of the written objects are outdated
+            // now, their ids are known
+            if (!byId.isEmpty() || !byKey.isEmpty()) {
+                mongirl.queryCache.invalidate(collection);
+                mongirl.retireSnapshot(collection);
+            }
+            List<Entry> written = new ArrayList<>(byId);
+            written.addAll(byKey);
+            for (Entry entry : written) {
+                mongirl.entityCache.invalidate(collection, entry.id);
+                if (!failures.containsKey(entry)) {
+                    mongirl.idCache.put(collection, entry.key, entry.id);
+                }
+            }
+        });
+        return failures;
+    }
+
+    /**
+     * Returns the id of a planned object after {@link #execute()}: an {@code ObjectId} if the
+     * object replaced a stored document, a {@code BsonObjectId} if it was inserted.
+     */
+    static Object idOf(Entry entry) {
+        if (entry == null) {
+            return null;
+        }
+        return entry.existing ? entry.id : new BsonObjectId(entry.id);
+    }
+
+    /**
+     * Looks up the stored documents of the entries with equality requirements, one query per
+     * {@link DecodeContext#BATCH_SIZE} entries. All other entries keep their provisional id.
+     */
+    private void resolveIds(String collection, List<Entry> collectionEntries) {
+        List<Entry> withKey = new ArrayList<>();
+        for (Entry entry : collectionEntries) {
+            if (entry.key == null || entry.document == null || entry.existing || entry.deterministic || upserted(entry)) {
+                continue;
+            }
+
+            ObjectId cached = mongirl.idCache.get(collection, entry.key);
+            if (cached != null) {
+                entry.id = cached;
+                entry.existing = true;
+            } else if (mongirl.mightBeStored(collection, entry.key)) {
+                withKey.add(entry);
+            }
+        }
+        lookup(collection, withKey);
+    }
+
+    /**
+     * Looks up the ids of the stored documents matching the equality requirements of the entries.
+     */
+    private void lookup(String collection, List<Entry> withKey) {
+        Map<BsonDocument, Entry> byKey = entriesByKey.getOrDefault(collection, Map.of());
+        MongoCollection<BsonDocument> mongoCollection = mongirl.getDB().getCollection(collection, BsonDocument.class);
+        for (int from = 0; from < withKey.size(); from += DecodeContext.BATCH_SIZE) {
+            List<Bson> filters = new ArrayList<>();
+            Set<List<String>> keyFields = new HashSet<>();
+            Set<String> projection = new HashSet<>(Set.of("_id"));
+            for (Entry entry : withKey.subList(from, Math.min(from + DecodeContext.BATCH_SIZE, withKey.size()))) {
+                filters.add(equalityFilter(entry.key));
+                keyFields.add(new ArrayList<>(entry.key.keySet()));
+                projection.addAll(entry.key.keySet());
+            }
+
+            for (BsonDocument found : mongoCollection.find(Filters.or(filters)).projection(Projections.include(new ArrayList<>(projection)))) {
+                Entry entry = entryOf(found, byKey, keyFields);
+                if (entry != null && !entry.existing) {
+                    entry.id = found.getObjectId("_id").getValue();
+                    entry.existing = true;
+                    mongirl.idCache.put(collection, entry.key, entry.id);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the entries of a collection. A write failing as a whole, e.g. because of a network
+     * error, fails its entries only, the writes of the other collections are still attempted.
+     *
+     * @param byId the entries written by their ids
+     * @param byKey the entries upserted by their equality requirements
+     */
+    private <D> void write(MongoCollection<D> collection, String name, List<Entry> byId, List<Entry> byKey,
+                           Map<Entry, String> failures) {
+        try {
+            write(collection, byId, failures);
+        } catch (MongoException exception) {
+            byId.forEach(entry -> failures.putIfAbsent(entry, exception.getMessage()));
+        }
+        try {
+            upsert(collection, name, byKey, failures);
+        } catch (MongoException exception) {
+            byKey.forEach(entry -> failures.putIfAbsent(entry, exception.getMessage()));
+        }
+    }
+
+    /**
+     * Writes entries by their ids.
+     */
+    @SuppressWarnings("unchecked")
+    private <D> void write(MongoCollection<D> collection, List<Entry> collectionEntries, Map<Entry, String> failures) {
+        if (collectionEntries.isEmpty()) {
+            return;
+        }
+
+        // The documents have no _id, an upsert takes it from the filter
+        List<ReplaceOneModel<D>> writes = new ArrayList<>(collectionEntries.size());
+        for (Entry entry : collectionEntries) {
+            writes.add(new ReplaceOneModel<>(Filters.eq("_id", entry.id), (D) document(entry), new ReplaceOptions().upsert(true)));
+        }
+
+        BulkWriteResult result;
+        try {
+            result = collection.bulkWrite(writes, new BulkWriteOptions().ordered(false));
+        } catch (MongoBulkWriteException exception) {
+            fail(exception, collectionEntries, failures);
+            result = exception.getWriteResult();
+        }
+
+        // Whether an object with a derived id was stored before is known after the write only
+        Set<Integer> inserted = new HashSet<>();
+        for (BulkWriteUpsert upsert : result.getUpserts()) {
+            inserted.add(upsert.getIndex());
+        }
+        for (int i = 0; i < collectionEntries.size(); i++) {
+            Entry entry = collectionEntries.get(i);
+            if (entry.deterministic) {
+                entry.existing = !inserted.contains(i);
+            }
+        }
+    }
+
+    /**
+     * Writes entries nothing else references by their equality requirements in upsert mode, which
+     * keeps the id of a matching document or inserts a new one. A single entry is written with one
+     * {@code findOneAndReplace} returning its id, several with one bulk write. The ids of the
+     * replaced documents of a bulk write are looked up afterwards.
+     */
+    @SuppressWarnings("unchecked")
+    private <D> void upsert(MongoCollection<D> collection, String name, List<Entry> collectionEntries, Map<Entry, String> failures) {
+        if (collectionEntries.isEmpty()) {
+            return;
+        }
+
+        if (collectionEntries.size() == 1) {
+            Entry entry = collectionEntries.get(0);
+            try {
+                D stored = collection.findOneAndReplace(equalityFilter(entry.key),
+                        (D) document(entry), new FindOneAndReplaceOptions().upsert(true)
+                                .returnDocument(ReturnDocument.AFTER).projection(Projections.include("_id")));
+                // The id of the document, whether it was replaced or inserted
+                entry.id = DecodeContext.idOf(stored);
+                entry.existing = true;
+            } catch (MongoWriteException exception) {
+                // Kept until the retry of write(), which replaces the document another writer inserted
+                failures.put(entry, exception.getMessage());
+                if (exception.getError().getCode() == DUPLICATE_KEY) {
+                    duplicateKey = true;
+                }
+            }
+            return;
+        }
+
+        List<ReplaceOneModel<D>> writes = new ArrayList<>(collectionEntries.size());
+        for (Entry entry : collectionEntries) {
+            writes.add(new ReplaceOneModel<>(equalityFilter(entry.key), (D) document(entry), new ReplaceOptions().upsert(true)));
+        }
+
+        BulkWriteResult result;
+        try {
+            result = collection.bulkWrite(writes, new BulkWriteOptions().ordered(false));
+        } catch (MongoBulkWriteException exception) {
+            fail(exception, collectionEntries, failures);
+            result = exception.getWriteResult();
+        }
+
+        Set<Entry> inserted = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (BulkWriteUpsert upsert : result.getUpserts()) {
+            Entry entry = collectionEntries.get(upsert.getIndex());
+            entry.id = upsert.getId().asObjectId().getValue();
+            inserted.add(entry);
+        }
+
+        List<Entry> replaced = new ArrayList<>();
+        for (Entry entry : collectionEntries) {
+            if (!inserted.contains(entry) && !failures.containsKey(entry)) {
+                replaced.add(entry);
+            }
+        }
+        lookup(name, replaced);
+    }
+
+    /**
+     * The document of an entry with the final ids of its references: the provisional ids of the
+     * objects which took over the id of a stored document are replaced.
+     */
+    private Object document(Entry entry) {
+        Map<ObjectId, ObjectId> ids = new HashMap<>();
+        for (Entry referenced : entry.references) {
+            if (!referenced.id.equals(referenced.provisional)) {
+                ids.put(referenced.provisional, referenced.id);
+            }
+        }
+        if (ids.isEmpty()) {
+            return entry.document;
+        }
+
+        // References are stored as field values or elements of arrays, see Mongirl#createDocumentOf
+        if (entry.document instanceof RawBsonDocument) {
+            BsonDocument document = new BsonDocument();
+            ((RawBsonDocument) entry.document).forEach((key, value) -> document.append(key, replaceIds(value, ids)));
+            return new RawBsonDocument(document, new BsonDocumentCodec());
+        }
+        Document document = new Document();
+        ((Document) entry.document).forEach((key, value) -> document.append(key, replaceIds(value, ids)));
+        return document;
+    }
+
+    private static BsonValue replaceIds(BsonValue value, Map<ObjectId, ObjectId> ids) {
+        if (value.isObjectId()) {
+            ObjectId id = ids.get(value.asObjectId().getValue());
+            return id == null ? value : new BsonObjectId(id);
+        }
+        if (value.isArray()) {
+            BsonArray array = new BsonArray();
+            value.asArray().forEach(element -> array.add(replaceIds(element, ids)));
+            return array;
+        }
+        return value;
+    }
+
+    private static Object replaceIds(Object value, Map<ObjectId, ObjectId> ids) {
+        if (value instanceof ObjectId) {
+            return ids.getOrDefault(value, (ObjectId) value);
+        }
+        if (value instanceof List) {
+            List<Object> list = new ArrayList<>();
+            ((List<?>) value).forEach(element -> list.add(replaceIds(element, ids)));
+            return list;
+        }
+        if (value instanceof Set) {
+            Set<Object> set = new HashSet<>();
+            ((Set<?>) value).forEach(element -> set.add(replaceIds(element, ids)));
+            return set;
+        }
+        return value;
+    }
+
+    private void fail(MongoBulkWriteException exception, List<Entry> written, Map<Entry, String> failures) {
+        for (BulkWriteError error : exception.getWriteErrors()) {
+            failures.put(written.get(error.getIndex()), error.getMessage());
+            if (error.getCode() == DUPLICATE_KEY) {
+                duplicateKey = true;
+            }
+        }
+    }
+
+    /**
+     * Whether an entry is written by its equality requirements, see {@link Mongirl#upsertMode}.
+     * Objects of dataclasses with all attributes equality relevant are looked up instead, their
+     * unique index would span all fields.
+     */
+    private boolean upserted(Entry entry) {
+        return mongirl.upsertMode && entry.key != null && !entry.deterministic && !referenced.contains(entry)
+                && !ClassMapping.of(entry.object.getClass()).allAttributesEqualRelevant;
+    }
+
+    /**
+     * Creates the unique indexes on the equality requirements of the upserted entries, once per
+     * collection and {@code Mongirl} instance.
+     *
+     * @throws MongirlStoreException if an index can't be created, e.g. because of stored duplicates
+     */
+    private void ensureUniqueIndexes(String collection, List<Entry> collectionEntries) {
+        for (Entry entry : collectionEntries) {
+            if (!upserted(entry)) {
+                continue;
+            }
+
+            List<String> keys = new ArrayList<>(entry.key.keySet());
+            if (mongirl.uniqueIndexes.add(collection + keys)) {
+                try {
+                    mongirl.getDB().getCollection(collection).createIndex(Indexes.ascending(keys), new IndexOptions().unique(true));
+                } catch (MongoException exception) {
+                    mongirl.uniqueIndexes.remove(collection + keys);
+                    throw new MongirlStoreException(String.format(MongirlStoreException.UNIQUE_INDEX, keys, collection, exception.getMessage()));
+                }
+            }
+        }
+    }
+
+    private Object encode(Object storageObject, MongirlCodec.ReferenceEncoder references) {
+        if (mongirl.codecMode) {
+            return MongirlCodec.of(storageObject.getClass()).encode(storageObject, references);
+        }
+        return mongirl.createDocumentOf(storageObject, references);
+    }
+
+    /**
+     * The values of the equality requirements of an object sorted by key, null if it has none.
+     */
+    static BsonDocument equalityKey(Object storageObject, CodecRegistry registry) {
+        List<FieldMapping> equalityFields = ClassMapping.of(storageObject.getClass()).equalityFields;
+        if (equalityFields.isEmpty()) {
+            return null;
+        }
+
+        Map<String, BsonValue> values = new TreeMap<>();
+        for (FieldMapping fieldMapping : equalityFields) {
+            BsonDocument encoded = Filters.eq(fieldMapping.key, fieldMapping.accessor.get(storageObject))
+                    .toBsonDocument(BsonDocument.class, registry);
+            values.put(fieldMapping.key, encoded.get(fieldMapping.key));
+        }
+
+        BsonDocument key = new BsonDocument();
+        values.forEach(key::append);
+        return key;
+    }
+
+    /**
+     * The filter matching the documents with the given equality requirements, see
+     * {@link #equalityKey(Object, CodecRegistry)}.
+     */
+    static Bson equalityFilter(BsonDocument key) {
+        List<Bson> filters = new ArrayList<>(key.size());
+        key.forEach((field, value) -> filters.add(Filters.eq(field, value)));
+        return Filters.and(filters);
+    }
+
+    /**
+     * The planned entry with the equality requirements of a found document, null if there is none.
+     *
+     * @param keyFields the keys of the equality requirements of the planned classes
+     */
+    private static Entry entryOf(BsonDocument found, Map<BsonDocument, Entry> byKey, Set<List<String>> keyFields) {
+        for (List<String> fields : keyFields) {
+            Entry entry = byKey.get(keyOf(found, fields));
+            if (entry != null) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Derives the id of a document from its collection and equality requirements: the first 12
+     * bytes of the SHA-256 hash of their BSON encoding.
+     *
+     * @param key the equality requirements, see {@link #equalityKey(Object, CodecRegistry)}
+     */
+    static ObjectId deterministicId(String collection, BsonDocument key) {
+        BasicOutputBuffer buffer = new BasicOutputBuffer();
+        new BsonDocumentCodec().encode(new BsonBinaryWriter(buffer),
+                new BsonDocument("c", new BsonString(collection)).append("k", key), EncoderContext.builder().build());
+
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(buffer.toByteArray());
+            return new ObjectId(Arrays.copyOf(hash, 12));
+        } catch (NoSuchAlgorithmException exception) {
+            // Every Java platform supports SHA-256
+            throw new IllegalStateException(exception);
+        }
+    }
+
+    /**
+     * The equality requirements of a stored document in the form of {@link #equalityKey(Object, CodecRegistry)}.
+     *
+     * @param fields the sorted keys of the equality requirements
+     */
+    static BsonDocument keyOf(BsonDocument document, List<String> fields) {
+        BsonDocument key = new BsonDocument();
+        for (String field : fields) {
+            key.append(field, document.getOrDefault(field, BsonNull.VALUE));
+        }
+        return key;
+    }
+
+    /**
+     * A document to write.
+     */
+    static final class Entry {
+        final BsonDocument key;
+
+        /**
+         * The index of the item of a batch which added the entry, -1 outside of batches.
+         */
+        final int item;
+
+        ObjectId id = new ObjectId();
+        boolean existing;
+
+        /**
+         * The id the documents referencing the entry are encoded with, see {@link WritePlan#document(Entry)}.
+         */
+        ObjectId provisional;
+
+        /**
+         * Whether the id is derived from the equality requirements, see {@link Store#deterministicId()}.
+         */
+        boolean deterministic;
+
+        /**
+         * The object, its document with the provisional ids and the entries it references, all
+         * null until the object is encoded successfully.
+         */
+        Object object;
+        Object document;
+        List<Entry> references = List.of();
+
+        Entry(BsonDocument key, int item) {
+            this.key = key;
+            this.item = item;
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package de.yniklas.mongirl.examples;
+
+import de.yniklas.mongirl.Cached;
+import de.yniklas.mongirl.Store;
+import de.yniklas.mongirl.StoreWith;
+
+@Store(collection = "cached")
+@Cached(maxEntries = 2)
+public class ExampleCached {
+    @StoreWith(equalityRequirement = true)
+    public String name;
+
+    @StoreWith
+    public int value;
+
+    public ExampleCached(String name, int value) {
+        this.name = name;
+        this.value = value;
+    }
+
+    public ExampleCached() {}
+}
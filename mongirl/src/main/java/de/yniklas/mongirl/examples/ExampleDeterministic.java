@@ -0,0 +1,20 @@
+package de.yniklas.mongirl.examples;
+
+import de.yniklas.mongirl.Store;
+import de.yniklas.mongirl.StoreWith;
+
+@Store(collection = "deterministic", deterministicId = true)
+public class ExampleDeterministic {
+    @StoreWith(equalityRequirement = true)
+    public String name;
+
+    @StoreWith
+    public ExampleSubObject sub;
+
+    public ExampleDeterministic(String name, ExampleSubObject sub) {
+        this.name = name;
+        this.sub = sub;
+    }
+
+    public ExampleDeterministic() {}
+}
@@ -0,0 +1,20 @@
+package de.yniklas.mongirl.examples;
+
+import de.yniklas.mongirl.Store;
+import de.yniklas.mongirl.StoreWith;
+
+@Store(collection = "measurement")
+public class ExampleMeasurement {
+    @StoreWith(equalityRequirement = true)
+    public long count;
+
+    @StoreWith(equalityRequirement = true)
+    public double weight;
+
+    public ExampleMeasurement(long count, double weight) {
+        this.count = count;
+        this.weight = weight;
+    }
+
+    public ExampleMeasurement() {}
+}
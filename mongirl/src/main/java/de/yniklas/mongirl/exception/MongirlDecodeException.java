@@ -0,0 +1,16 @@
+package de.yniklas.mongirl.exception;
+
+public class MongirlDecodeException extends RuntimeException {
+    public static String NO_CONSTRICTOR
+            = "The class %s must have a public constructor";
+    public static String UNKNOWN_CLASSPATH
+            = "The stored classpath %s doesn't match any class";
+    public static String NO_INSTANCE
+            = "The class %s couldn't be instantiated. Details: %s";
+    public static String SNAPSHOT
+            = "The snapshot %s couldn't be read. Details: %s";
+
+    public MongirlDecodeException(String message) {
+        super(message);
+    }
+}
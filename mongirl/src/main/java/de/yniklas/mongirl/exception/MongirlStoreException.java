@@ -0,0 +1,12 @@
+package de.yniklas.mongirl.exception;
+
+public class MongirlStoreException extends RuntimeException {
+    public static final String NO_CODEC = "An object cannot be encoded and couldn't be stored. Details: %s";
+    public static final String BULK_WRITE = "Objects couldn't be written to the database. Details: %s";
+    public static final String UNIQUE_INDEX = "The unique index on %s of the collection %s for the upsert mode couldn't be created, e.g. because stored documents share these values. Details: %s";
+    public static final String SNAPSHOT = "The snapshot %s couldn't be written. Details: %s";
+
+    public MongirlStoreException(String message) {
+        super(message);
+    }
+}
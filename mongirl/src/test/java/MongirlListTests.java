@@ -5,7 +5,11 @@ import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
@@ -133,6 +137,28 @@ public class MongirlListTests {
         });
     }
 
+    @Test
+    public void testParallelStream() {
+        for (int i = 0; i < 50; i++) {
+            MongirlTests.testMongirl.store(new ExampleStore(String.valueOf(i)));
+        }
+
+        MongirlList<ExampleStore> list = new MongirlList<>(MongirlTests.testMongirl, ExampleStore.class, true, true);
+        assertEquals(1225, list.parallelStream().mapToInt(exampleStore -> Integer.parseInt(exampleStore.superSuperIdentifier)).sum());
+
+        // Removed objects are left out by the partitions as well
+        list.remove(new ExampleStore("49"));
+        try (Stream<ExampleStore> stream = list.parallelStream()) {
+            assertEquals(1176, stream.mapToInt(exampleStore -> Integer.parseInt(exampleStore.superSuperIdentifier)).sum());
+        }
+
+        // Sequential streams keep the order and the size of the list
+        List<String> identifiers = new ArrayList<>();
+        list.forEach(exampleStore -> identifiers.add(exampleStore.superSuperIdentifier));
+        assertEquals(identifiers, list.stream().map(exampleStore -> exampleStore.superSuperIdentifier).collect(Collectors.toList()));
+        assertEquals(list.size(), list.stream().count());
+    }
+
     @Test
     public void testPerformance() {
         for (int i = 0; i < 2000; i++) {
@@ -0,0 +1,716 @@
+import com.mongodb.MongoClientSettings;
+import com.mongodb.ServerAddress;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.mongodb.client.MongoDatabase;
+import de.yniklas.mongirl.Mongirl;
+import de.yniklas.mongirl.MongirlAsync;
+import de.yniklas.mongirl.MongirlCursor;
+import de.yniklas.mongirl.MongirlSession;
+import de.yniklas.mongirl.MongirlWriteBehind;
+import de.yniklas.mongirl.Pair;
+import de.yniklas.mongirl.StoreAllResult;
+import de.yniklas.mongirl.examples.*;
+import de.yniklas.mongirl.exception.MongirlStoreException;
+import org.bson.BsonObjectId;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MongirlTests {
+    public static Mongirl testMongirl;
+    public static MongoDatabase DB;
+
+    @BeforeAll
+    public static void initDB() {
+        testMongirl = new Mongirl("localhost", 27017, "test");
+
+        MongoClientSettings settings = MongoClientSettings.builder()
+                .applyToClusterSettings(builder -> builder.hosts(Collections.singletonList(
+                        new ServerAddress("localhost", 27017)
+                ))).build();
+
+        MongoClient client = MongoClients.create(settings);
+        DB = client.getDatabase("test");
+        DB.drop();
+    }
+
+    @Test
+    public void testInsertOne() {
+        testMongirl.store(new ExampleFolded("testInsertOne"));
+        List<ExampleFolded> exampleFoldeds = testMongirl.decodeAll(ExampleFolded.class);
+
+        ExampleFolded eq = null;
+        for (ExampleFolded exampleFolded : exampleFoldeds) {
+            if (exampleFolded.sub.haha.equals("testInsertOne")) {
+                eq = exampleFolded;
+            }
+        }
+
+        assertNotNull(eq);
+    }
+
+    @Test
+    public void testDecode() {
+        testMongirl.store(new ExampleFolded("28"));
+        assertEquals(testMongirl.decodeAll(ExampleFolded.class).get(0).sub.haha, "28");
+    }
+
+    @Test
+    public void testFolded() {
+        testMongirl.store(new ExampleFolded("testFolded"));
+        List<ExampleFolded> exampleFoldeds = testMongirl.decodeAll(ExampleFolded.class);
+
+        ExampleFolded eq = null;
+        for (ExampleFolded exampleFolded : exampleFoldeds) {
+            if (exampleFolded.subs.size() >= 2 && exampleFolded.subs.get(1).haha.equals("testFolded")) {
+                eq = exampleFolded;
+            }
+        }
+
+        assertNotNull(eq);
+    }
+
+    @Test
+    public void testDataclass() {
+        testMongirl.store(new ExampleDataclass("auch dabei", 5));
+        assertEquals(testMongirl.decodeAll(ExampleDataclass.class).get(0).id, 5);
+    }
+
+    @Test
+    public void testDecodeFromFilters() {
+        int random = (int) (Math.random() * 1000);
+        testMongirl.store(new ExampleFolded(String.valueOf(random)));
+        ExampleFolded decoded = testMongirl.decodeFromFilters(ExampleFolded.class, new Pair("idd", "28"), new Pair("sub", new ExampleSubObject(String.valueOf(random))));
+        assertEquals(decoded.idd, "28");
+        assertEquals(decoded.sub.haha, String.valueOf(random));
+    }
+
+    @Test
+    public void testClasspath() {
+        ExampleDoubleConnection1 decoded = testMongirl.decodeTo(ExampleDoubleConnection1.class, ((BsonObjectId) testMongirl.store(new ExampleDoubleConnection1())).getValue());
+        assertEquals(decoded.iddd, decoded.connection2s.get(0).connection1.iddd);
+    }
+
+    @Test
+    public void testEnum() {
+        testMongirl.store(new ExampleEnum(6));
+        assertEquals("TYPO2", testMongirl.decodeFromFilters(ExampleEnum.class, new Pair("id", 6)).tip.toString());
+    }
+
+    @Test
+    public void testInheritance() {
+        ExampleSuperclass x = new ExampleSubClass();
+        testMongirl.store(x);
+
+        assertEquals("20", testMongirl.decodeAll(ExampleSubClass.class).get(0).getSuperInt());
+    }
+
+    @Test
+    public void testArray() {
+        testMongirl.store(new ExampleArrayClass(5));
+        List<ExampleArrayClass> exampleArrayClasses = testMongirl.decodeAll(ExampleArrayClass.class);
+
+        assertEquals(1, exampleArrayClasses.size());
+        assertEquals(2, exampleArrayClasses.get(0).nmbrs[1]);
+        assertEquals(5, exampleArrayClasses.get(0).enhancedArray.length);
+        assertEquals("testuser0", exampleArrayClasses.get(0).enhancedArray[0].haha);
+    }
+
+    @Test
+    public void testManyReferences() {
+        testMongirl.store(new ExampleArrayClass(500));
+        ExampleArrayClass decoded = testMongirl.decodeAll(ExampleArrayClass.class).get(0);
+
+        // All references of a level are fetched together, the order has to be kept anyway
+        assertEquals(500, decoded.enhancedArray.length);
+        for (int i = 0; i < decoded.enhancedArray.length; i++) {
+            assertEquals("testuser" + i, decoded.enhancedArray[i].haha);
+        }
+    }
+
+    @Test
+    public void testBulkStore() {
+        Object id = testMongirl.store(new ExampleArrayClass(1000));
+        assertTrue(id instanceof BsonObjectId);
+
+        // Storing the graph again replaces the stored documents by their equality requirements
+        assertEquals(((BsonObjectId) id).getValue(), testMongirl.store(new ExampleArrayClass(1000)));
+        assertEquals(1, DB.getCollection("array").countDocuments());
+        assertEquals(1001, DB.getCollection("sub").countDocuments());
+
+        ExampleArrayClass decoded = testMongirl.decodeAll(ExampleArrayClass.class).get(0);
+        assertEquals("testuser999", decoded.enhancedArray[999].haha);
+    }
+
+    @Test
+    public void testStoreAll() {
+        List<ExampleSubObject> subs = new ArrayList<>();
+        for (int i = 0; i < 2500; i++) {
+            subs.add(new ExampleSubObject("stored" + i));
+        }
+        subs.set(1200, null);
+
+        StoreAllResult result = testMongirl.storeAll(subs.iterator(), 500, 3);
+        assertEquals(2500, result.getIds().size());
+        assertEquals(Set.of(1200), result.getFailures().keySet());
+        assertNull(result.getIds().get(1200));
+        assertEquals(2499, DB.getCollection("sub").countDocuments());
+        assertEquals(((BsonObjectId) result.getIds().get(7)).getValue(), testMongirl.store(new ExampleSubObject("stored7")));
+
+        // Equal objects of different batches are stored once
+        result = testMongirl.storeAll(Stream.generate(() -> new ExampleSubObject("same")).limit(1500));
+        assertTrue(result.isSuccessful());
+        assertEquals(1, DB.getCollection("sub").countDocuments(new org.bson.Document("haha", "same")));
+        assertEquals(1, result.getIds().stream().map(id -> id instanceof BsonObjectId ? ((BsonObjectId) id).getValue() : id).distinct().count());
+    }
+
+    @Test
+    public void testUpsertMode() {
+        Mongirl upserting = new Mongirl("localhost", 27017, "test");
+        upserting.upsertMode = true;
+
+        // A single object is written with one upsert and its id is returned
+        Object id = upserting.store(new ExampleSubObject("upserted"));
+        assertTrue(id instanceof ObjectId);
+        assertEquals(id, upserting.store(new ExampleSubObject("upserted")));
+        assertEquals(1, DB.getCollection("sub").countDocuments());
+
+        // Referenced objects are looked up, the unreferenced one is upserted. Only the collections
+        // of upserted objects get a unique index, so referenced ones may hold duplicates
+        DB.getCollection("collection").insertMany(List.of(new org.bson.Document("customId", "test"), new org.bson.Document("customId", "test")));
+        upserting.store(new ExampleArrayClass(3));
+        upserting.store(new ExampleArrayClass(3));
+        assertEquals(1, DB.getCollection("array").countDocuments());
+        assertEquals(5, DB.getCollection("sub").countDocuments());
+
+        StoreAllResult result = upserting.storeAll(Stream.generate(() -> new ExampleSubObject("same")).limit(20));
+        assertTrue(result.isSuccessful());
+        assertEquals(1, result.getIds().stream().distinct().count());
+
+        assertTrue(hasUniqueIndex("sub"));
+        assertFalse(hasUniqueIndex("collection"));
+
+        // Dataclasses with all attributes equality relevant are looked up, not upserted
+        upserting.store(new ExampleDataclass("upserted", 1));
+        upserting.store(new ExampleDataclass("upserted", 1));
+        assertEquals(1, DB.getCollection("dataclass").countDocuments());
+        assertFalse(hasUniqueIndex("dataclass"));
+
+        // Stored duplicates prevent the unique index
+        DB.getCollection("array").drop();
+        DB.getCollection("array").insertMany(List.of(new org.bson.Document("name", "otto"), new org.bson.Document("name", "otto")));
+        Mongirl duplicates = new Mongirl("localhost", 27017, "test");
+        duplicates.upsertMode = true;
+        MongirlStoreException exception = assertThrows(MongirlStoreException.class, () -> duplicates.store(new ExampleArrayClass(1)));
+        assertTrue(exception.getMessage().contains("unique index"), exception.getMessage());
+    }
+
+    @Test
+    public void testConcurrentUpserts() throws Exception {
+        Mongirl upserting = new Mongirl("localhost", 27017, "test");
+        upserting.upsertMode = true;
+        // Creates the unique index before the race
+        upserting.store(new ExampleSubObject("index"));
+
+        // Upserts of a new object racing on the unique index are retried and replace the winner's document
+        ExecutorService threads = Executors.newFixedThreadPool(8);
+        try {
+            for (int round = 0; round < 10; round++) {
+                CyclicBarrier start = new CyclicBarrier(8);
+                String haha = "race" + round;
+                List<Future<Object>> stores = new ArrayList<>();
+                for (int i = 0; i < 8; i++) {
+                    stores.add(threads.submit(() -> {
+                        start.await();
+                        return upserting.store(new ExampleSubObject(haha));
+                    }));
+                }
+
+                Set<Object> ids = new HashSet<>();
+                for (Future<Object> store : stores) {
+                    ids.add(store.get());
+                }
+                assertEquals(1, ids.size());
+                assertEquals(1, DB.getCollection("sub").countDocuments(new org.bson.Document("haha", haha)));
+            }
+        } finally {
+            threads.shutdown();
+        }
+    }
+
+    private static boolean hasUniqueIndex(String collection) {
+        boolean unique = false;
+        for (org.bson.Document index : DB.getCollection(collection).listIndexes()) {
+            unique |= !index.get("key", org.bson.Document.class).containsKey("_id") && index.getBoolean("unique", false);
+        }
+        return unique;
+    }
+
+    @Test
+    public void testSession() {
+        ObjectId id = ((BsonObjectId) testMongirl.store(new ExampleDoubleConnection1())).getValue();
+
+        try (MongirlSession session = testMongirl.openSession()) {
+            // Decodes of a session share their instances
+            ExampleDoubleConnection1 decoded = session.decodeTo(ExampleDoubleConnection1.class, id);
+            assertSame(decoded, session.decodeTo(ExampleDoubleConnection1.class, id));
+            assertSame(decoded, session.decodeAll(ExampleDoubleConnection1.class).get(0));
+            assertSame(decoded.connection2s.get(0), session.decodeAll(ExampleDoubleConnection2.class).get(0));
+            assertNotSame(decoded, testMongirl.decodeTo(ExampleDoubleConnection1.class, id));
+
+            // Stores are written by the flush
+            ExampleSubObject first = new ExampleSubObject("session1");
+            session.store(first);
+            session.store(new ExampleSubObject("session2"));
+            assertEquals(0, DB.getCollection("sub").countDocuments());
+
+            List<Object> ids = session.flush();
+            assertEquals(2, ids.size());
+            assertEquals(2, DB.getCollection("sub").countDocuments());
+            assertSame(first, session.decodeTo(ExampleSubObject.class, ((BsonObjectId) ids.get(0)).getValue()));
+
+            // Filters and scans only fetch the documents of objects the session doesn't know yet
+            assertSame(first, session.decodeFromFilters(ExampleSubObject.class, new Pair("haha", "session1")));
+            List<ExampleSubObject> subs = session.decodeAll(ExampleSubObject.class);
+            assertEquals(2, subs.size());
+            assertTrue(subs.contains(first));
+            assertSame(subs.get(subs.indexOf(first) == 0 ? 1 : 0), session.decodeFromFilters(ExampleSubObject.class, new Pair("haha", "session2")));
+
+            session.store(new ExampleSubObject("session3"));
+        }
+        assertEquals(3, DB.getCollection("sub").countDocuments());
+    }
+
+    @Test
+    public void testEntityCache() {
+        Mongirl caching = new Mongirl("localhost", 27017, "test");
+        ObjectId id = ((BsonObjectId) caching.store(new ExampleCached("cached", 1))).getValue();
+
+        assertEquals(1, caching.decodeTo(ExampleCached.class, id).value);
+        assertEquals(0, caching.getCacheStats().getHits());
+
+        // The second decode doesn't see changes made without Mongirl
+        DB.getCollection("cached").updateOne(new org.bson.Document("_id", id), new org.bson.Document("$set", new org.bson.Document("value", 2)));
+        assertEquals(1, caching.decodeTo(ExampleCached.class, id).value);
+        assertEquals(1, caching.getCacheStats().getHits());
+
+        // Stores invalidate the cached documents
+        caching.store(new ExampleCached("cached", 3));
+        assertEquals(3, caching.decodeTo(ExampleCached.class, id).value);
+        caching.invalidateCache();
+        assertEquals(3, caching.decodeFromFilters(ExampleCached.class, new Pair("name", "cached")).value);
+        assertEquals(1, caching.getCacheStats().getHits());
+        assertEquals(3, caching.getCacheStats().getMisses());
+
+        // At most two documents are cached
+        ObjectId second = ((BsonObjectId) caching.store(new ExampleCached("second", 1))).getValue();
+        ObjectId third = ((BsonObjectId) caching.store(new ExampleCached("third", 1))).getValue();
+        caching.decodeMany(ExampleCached.class, List.of(second, third));
+        assertEquals(1, caching.getCacheStats().getEvictions());
+    }
+
+    @Test
+    public void testIdCache() {
+        Mongirl caching = new Mongirl("localhost", 27017, "test");
+        caching.idCacheSize = 100;
+
+        // Cached by stores
+        ObjectId stored = ((BsonObjectId) caching.store(new ExampleSubObject("stored"))).getValue();
+        // Cached by decodes
+        ObjectId decoded = new ObjectId();
+        DB.getCollection("sub").insertOne(new org.bson.Document("_id", decoded).append("haha", "decoded"));
+        caching.decodeTo(ExampleSubObject.class, decoded);
+        // Cached by preloading
+        ObjectId preloaded = new ObjectId();
+        DB.getCollection("sub").insertOne(new org.bson.Document("_id", preloaded).append("haha", "preloaded"));
+        caching.preloadIds(ExampleSubObject.class);
+
+        // The documents are gone, so the ids can only come from the cache
+        DB.getCollection("sub").deleteMany(new org.bson.Document());
+        assertEquals(stored, caching.getObjectIdFrom(new ExampleSubObject("stored")));
+        assertEquals(decoded, caching.getObjectIdFrom(new ExampleSubObject("decoded")));
+        assertEquals(preloaded, caching.getObjectIdFrom(new ExampleSubObject("preloaded")));
+        assertEquals(preloaded, caching.store(new ExampleSubObject("preloaded")));
+
+        caching.invalidateCache();
+        assertNull(caching.getObjectIdFrom(new ExampleSubObject("stored")));
+        assertEquals(preloaded, caching.getObjectIdFrom(new ExampleSubObject("preloaded")));
+    }
+
+    @Test
+    public void testDeterministicId() {
+        Object inserted = testMongirl.store(new ExampleDeterministic("derived", new ExampleSubObject("first")));
+        assertTrue(inserted instanceof BsonObjectId);
+        ObjectId id = ((BsonObjectId) inserted).getValue();
+
+        // The id is derived from the equality requirements, on every instance
+        Mongirl other = new Mongirl("localhost", 27017, "test");
+        assertEquals(id, other.store(new ExampleDeterministic("derived", new ExampleSubObject("second"))));
+        assertEquals(id, other.getObjectIdFrom(new ExampleDeterministic("derived", null)));
+        assertNull(other.getObjectIdFrom(new ExampleDeterministic("underived", null)));
+
+        assertEquals(1, DB.getCollection("deterministic").countDocuments());
+        assertEquals("second", testMongirl.decodeTo(ExampleDeterministic.class, id).sub.haha);
+    }
+
+    @Test
+    public void testExistenceFilter() {
+        Mongirl filtered = new Mongirl("localhost", 27017, "test");
+        ObjectId stored = ((BsonObjectId) filtered.store(new ExampleSubObject("stored"))).getValue();
+        filtered.buildExistenceFilter(ExampleSubObject.class, 1000);
+        ObjectId added = ((BsonObjectId) filtered.store(new ExampleSubObject("added"))).getValue();
+
+        assertEquals(stored, filtered.getObjectIdFrom(new ExampleSubObject("stored")));
+        assertEquals(added, filtered.getObjectIdFrom(new ExampleSubObject("added")));
+        assertEquals("added", filtered.decodeFromFilters(ExampleSubObject.class, new Pair("haha", "added")).haha);
+
+        // Written without this instance, so the filter rules it out without a query
+        DB.getCollection("sub").insertOne(new org.bson.Document("haha", "unknown"));
+        assertNull(filtered.getObjectIdFrom(new ExampleSubObject("unknown")));
+        assertNull(filtered.decodeFromFilters(ExampleSubObject.class, new Pair("haha", "unknown")));
+        assertNotNull(testMongirl.getObjectIdFrom(new ExampleSubObject("unknown")));
+
+        // Pairs of other number types than the fields match like the queries
+        filtered.store(new ExampleMeasurement(5, 2));
+        filtered.buildExistenceFilter(ExampleMeasurement.class, 1000);
+        ExampleMeasurement measurement = filtered.decodeFromFilters(ExampleMeasurement.class, new Pair("count", 5), new Pair("weight", 2));
+        assertEquals(5, measurement.count);
+        assertEquals(2, measurement.weight, 1e-9);
+        assertNull(filtered.decodeFromFilters(ExampleMeasurement.class, new Pair("count", 6), new Pair("weight", 2)));
+    }
+
+    @Test
+    public void testQueryCache() {
+        Mongirl caching = new Mongirl("localhost", 27017, "test");
+        caching.queryCacheSize = 10;
+
+        ExampleDoubleConnection1 origin = new ExampleDoubleConnection1();
+        caching.store(origin);
+        ExampleDoubleConnection2 found = caching.decodeFromFilters(ExampleDoubleConnection2.class, new Pair("connection1", origin));
+        assertEquals(origin.iddd, found.connection1.iddd);
+        assertEquals(origin.iddd, caching.decodeFromFilters(ExampleDoubleConnection2.class, new Pair("connection1", origin)).connection1.iddd);
+        assertNull(caching.decodeFromFilters(ExampleSubObject.class, new Pair("haha", "late")));
+
+        // Results are cached, also if there is no match
+        DB.getCollection("sub").insertOne(new org.bson.Document("haha", "late"));
+        assertNull(caching.decodeFromFilters(ExampleSubObject.class, new Pair("haha", "late")));
+
+        // Stores invalidate the results of their collections
+        caching.store(new ExampleSubObject("other"));
+        assertEquals("late", caching.decodeFromFilters(ExampleSubObject.class, new Pair("haha", "late")).haha);
+    }
+
+    @Test
+    public void testOffHeapCache() {
+        Mongirl caching = new Mongirl("localhost", 27017, "test");
+        caching.enableOffHeapCache(1024 * 1024);
+        ObjectId id = ((BsonObjectId) caching.store(new ExampleSubObject("offheap"))).getValue();
+
+        assertEquals("offheap", caching.decodeTo(ExampleSubObject.class, id).haha);
+        DB.getCollection("sub").updateOne(new org.bson.Document("_id", id), new org.bson.Document("$set", new org.bson.Document("haha", "changed")));
+        assertEquals("offheap", caching.decodeTo(ExampleSubObject.class, id).haha);
+        caching.codecMode = true;
+        assertEquals("offheap", caching.decodeTo(ExampleSubObject.class, id).haha);
+        assertEquals(2, caching.getOffHeapCacheStats().getHits());
+
+        // Stores invalidate the cached documents, the stored object takes over the changed document
+        assertEquals(id, caching.store(new ExampleSubObject("changed")));
+        assertEquals("changed", caching.decodeTo(ExampleSubObject.class, id).haha);
+
+        // A full cache evicts the documents of its oldest buffer
+        caching.enableOffHeapCache(100);
+        List<ObjectId> ids = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            ids.add(((BsonObjectId) caching.store(new ExampleSubObject("evicted" + i))).getValue());
+        }
+        caching.decodeMany(ExampleSubObject.class, ids);
+        assertEquals(2, caching.getOffHeapCacheStats().getEvictions());
+    }
+
+    @Test
+    public void testSnapshot() throws Exception {
+        testMongirl.store(new ExampleArrayClass(3));
+        Path file = Files.createTempFile("mongirl", ".snapshot");
+        try {
+            testMongirl.writeSnapshot(file, ExampleArrayClass.class, ExampleSubObject.class);
+            DB.getCollection("sub").updateMany(new org.bson.Document(), new org.bson.Document("$set", new org.bson.Document("haha", "changed")));
+
+            // Until it's caught up, the snapshot is read instead of the database
+            Mongirl starting = new Mongirl("localhost", 27017, "test");
+            List<Runnable> catchUps = new ArrayList<>();
+            CompletableFuture<Void> caughtUp = starting.loadSnapshot(file, catchUps::add);
+            assertEquals("testuser1", starting.decodeAll(ExampleArrayClass.class).get(0).enhancedArray[1].haha);
+            starting.codecMode = true;
+            assertEquals("testuser1", starting.decodeAll(ExampleArrayClass.class).get(0).enhancedArray[1].haha);
+
+            catchUps.forEach(Runnable::run);
+            caughtUp.get();
+            assertEquals("changed", starting.decodeAll(ExampleArrayClass.class).get(0).enhancedArray[1].haha);
+
+            // The next start reads the caught up snapshot, until the collection is written to
+            Mongirl restarting = new Mongirl("localhost", 27017, "test");
+            restarting.loadSnapshot(file, task -> {});
+            DB.getCollection("sub").updateMany(new org.bson.Document(), new org.bson.Document("$set", new org.bson.Document("haha", "again")));
+            assertEquals("changed", restarting.decodeAll(ExampleSubObject.class).get(0).haha);
+            restarting.store(new ExampleSubObject("written"));
+            assertEquals("again", restarting.decodeAll(ExampleSubObject.class).get(0).haha);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void testWriteBehind() {
+        MongirlWriteBehind writeBehind = testMongirl.writeBehind(2, 3_600_000, 2);
+        for (int i = 0; i < 100; i++) {
+            writeBehind.store(new ExampleSubObject("behind"));
+        }
+        assertEquals(0, DB.getCollection("sub").countDocuments());
+        assertEquals(1, writeBehind.getStats().getBuffered());
+        assertEquals(99, writeBehind.getStats().getCoalesced());
+        assertEquals(0.99, writeBehind.getStats().getCoalescingRatio(), 1e-9);
+
+        // Repeated stores of the same document are written once
+        writeBehind.flush();
+        assertEquals(1, DB.getCollection("sub").countDocuments());
+        assertEquals(1, writeBehind.getStats().getWritten());
+        assertEquals(0.99, writeBehind.getStats().getCoalescingRatio(), 1e-9);
+
+        // A full buffer waits for the flusher, close flushes the rest
+        for (int i = 0; i < 5; i++) {
+            writeBehind.store(new ExampleSubObject("full" + i));
+        }
+        writeBehind.close();
+        assertEquals(6, DB.getCollection("sub").countDocuments());
+        assertEquals(6, writeBehind.getStats().getWritten());
+        assertTrue(writeBehind.getStats().getFlushes() >= 3);
+        assertThrows(IllegalStateException.class, () -> writeBehind.store(new ExampleSubObject("closed")));
+
+        // The state at the store is written, references to stored objects get their ids
+        try (MongirlWriteBehind snapshots = testMongirl.writeBehind(1000, 3_600_000, 1000)) {
+            ExampleCached changed = new ExampleCached("snapshot", 1);
+            snapshots.store(changed);
+            changed.value = 2;
+            snapshots.store(new ExampleDeterministic("referencing", new ExampleSubObject("behind")));
+            snapshots.flush();
+            assertEquals(1, DB.getCollection("cached").find().first().getInteger("value"));
+            assertEquals(DB.getCollection("sub").find(new org.bson.Document("haha", "behind")).first().getObjectId("_id"),
+                    DB.getCollection("deterministic").find().first().getObjectId("sub"));
+            assertEquals(6, DB.getCollection("sub").countDocuments());
+        }
+    }
+
+    @Test
+    public void testCycleStore() {
+        ExampleDoubleConnection1 origin = new ExampleDoubleConnection1();
+        ObjectId id = ((BsonObjectId) testMongirl.store(origin)).getValue();
+
+        // The cycle is written in one pass with the final reference
+        assertEquals(id, DB.getCollection("doubled").find().first().getObjectId("connection1"));
+        assertEquals(1, DB.getCollection("doubled").countDocuments());
+
+        ExampleDoubleConnection1 decoded = testMongirl.decodeTo(ExampleDoubleConnection1.class, id);
+        assertSame(decoded, decoded.connection2s.get(0).connection1);
+    }
+
+    @Test
+    public void testLookupMode() {
+        testMongirl.lookupDepth = 2;
+        try {
+            ObjectId id = ((BsonObjectId) testMongirl.store(new ExampleDoubleConnection1())).getValue();
+            ExampleDoubleConnection1 decoded = testMongirl.decodeTo(ExampleDoubleConnection1.class, id);
+            assertSame(decoded, decoded.connection2s.get(0).connection1);
+
+            // The stages of deep plans are limited, the rest is fetched in batches
+            testMongirl.lookupDepth = 1000;
+            decoded = testMongirl.decodeTo(ExampleDoubleConnection1.class, id);
+            assertSame(decoded, decoded.connection2s.get(0).connection1);
+            testMongirl.lookupDepth = 2;
+
+            testMongirl.store(new ExampleArrayClass(3));
+            ExampleArrayClass array = testMongirl.decodeFromFilters(ExampleArrayClass.class, new Pair("name", "otto"));
+            assertEquals("testuser2", array.enhancedArray[2].haha);
+
+            testMongirl.codecMode = true;
+            array = testMongirl.decodeFromFilters(ExampleArrayClass.class, new Pair("name", "otto"));
+            assertEquals("testuser1", array.enhancedArray[1].haha);
+        } finally {
+            testMongirl.lookupDepth = 0;
+            testMongirl.codecMode = false;
+        }
+    }
+
+    @Test
+    public void testDecodeAllBlackList() {
+        ObjectId first = ((BsonObjectId) testMongirl.store(new ExampleSubObject("first"))).getValue();
+        testMongirl.store(new ExampleSubObject("second"));
+
+        List<ExampleSubObject> decoded = testMongirl.decodeAll(ExampleSubObject.class, List.of(first));
+        assertEquals(1, decoded.size());
+        assertEquals("second", decoded.get(0).haha);
+
+        // Large blacklists are applied locally
+        List<ObjectId> blackList = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            blackList.add(new ObjectId());
+        }
+        blackList.add(first);
+        decoded = testMongirl.decodeAll(ExampleSubObject.class, blackList);
+        assertEquals(1, decoded.size());
+        assertEquals("second", decoded.get(0).haha);
+    }
+
+    @Test
+    public void testDecodeMany() {
+        ObjectId first = ((BsonObjectId) testMongirl.store(new ExampleSubObject("first"))).getValue();
+        ObjectId second = ((BsonObjectId) testMongirl.store(new ExampleSubObject("second"))).getValue();
+
+        List<ExampleSubObject> decoded = testMongirl.decodeMany(ExampleSubObject.class, List.of(second, new ObjectId(), first));
+        assertEquals(3, decoded.size());
+        assertEquals("second", decoded.get(0).haha);
+        assertNull(decoded.get(1));
+        assertEquals("first", decoded.get(2).haha);
+    }
+
+    @Test
+    public void testStream() {
+        for (int i = 0; i < 5; i++) {
+            testMongirl.store(new ExampleSubObject("streamed" + i));
+        }
+
+        try (Stream<ExampleSubObject> stream = testMongirl.stream(ExampleSubObject.class, 2)) {
+            assertEquals(5, stream.filter(sub -> sub.haha.startsWith("streamed")).count());
+        }
+
+        try (MongirlCursor<ExampleSubObject> cursor = testMongirl.iterate(ExampleSubObject.class, 2, new Pair("haha", "streamed3"))) {
+            assertTrue(cursor.hasNext());
+            assertEquals("streamed3", cursor.next().haha);
+            assertFalse(cursor.hasNext());
+        }
+    }
+
+    @Test
+    public void testParallelScan() {
+        for (int i = 0; i < 40; i++) {
+            testMongirl.store(new ExampleSubObject("scanned" + i));
+        }
+
+        try (Stream<ExampleSubObject> stream = testMongirl.parallelStream(ExampleSubObject.class, 4)) {
+            assertEquals(40, stream.map(sub -> sub.haha).distinct().count());
+        }
+
+        // An exhausted partition stays exhausted
+        try (Stream<ExampleSubObject> stream = testMongirl.parallelStream(ExampleSubObject.class, 100)) {
+            Spliterator<ExampleSubObject> spliterator = stream.spliterator();
+            assertTrue(spliterator.hasCharacteristics(Spliterator.NONNULL));
+            List<ExampleSubObject> all = new ArrayList<>();
+            spliterator.forEachRemaining(all::add);
+            assertEquals(40, all.size());
+            assertFalse(spliterator.tryAdvance(all::add));
+        }
+
+        Set<String> scanned = ConcurrentHashMap.newKeySet();
+        ForkJoinPool pool = new ForkJoinPool(3);
+        testMongirl.parallelForEach(ExampleSubObject.class, 4, pool, sub -> scanned.add(sub.haha));
+        pool.shutdown();
+        assertEquals(40, scanned.size());
+    }
+
+    @Test
+    public void testAsync() {
+        try (MongirlAsync async = new MongirlAsync("localhost", 27017, "test")) {
+            ExampleDoubleConnection1 cycle = new ExampleDoubleConnection1();
+            ObjectId cycleId = async.store(cycle).join();
+            ExampleDoubleConnection1 decoded = async.decodeTo(ExampleDoubleConnection1.class, cycleId).join();
+            assertEquals(cycle.iddd, decoded.iddd);
+            assertSame(decoded, decoded.connection2s.get(0).connection1);
+            assertEquals(cycleId, async.getObjectIdFrom(cycle).join());
+
+            // Stored asynchronously, decoded synchronously and the other way around
+            async.store(new ExampleArrayClass(3)).join();
+            assertEquals("testuser2", testMongirl.decodeAll(ExampleArrayClass.class).get(0).enhancedArray[2].haha);
+            testMongirl.store(new ExampleSubObject("sync"));
+            assertEquals("sync", async.decodeFromFilters(ExampleSubObject.class, new Pair("haha", "sync")).join().haha);
+
+            ObjectId first = async.getObjectIdFrom(new ExampleSubObject("testuser0")).join();
+            List<ExampleSubObject> subs = async.decodeAll(ExampleSubObject.class, List.of(first)).join();
+            // The three array elements, the sub object of its ExampleStore and "sync"
+            assertEquals(4, subs.size());
+            assertTrue(subs.stream().noneMatch(sub -> sub.haha.equals("testuser0")));
+        }
+    }
+
+    @Test
+    public void testMongoEquality() {
+        ExampleStore item = new ExampleStore("0");
+        testMongirl.store(item);
+
+        // Objects are only mongo-equal since the decode operation creates a new instance with the same attribute values.
+        assertNotEquals(item, testMongirl.decodeAll(ExampleStore.class).get(0));
+        assertTrue(Mongirl.areMongoEqual(testMongirl.decodeAll(ExampleStore.class).get(0), item));
+    }
+
+    @Test
+    public void testCodecMode() {
+        testMongirl.codecMode = true;
+        try {
+            ExampleDoubleConnection1 decoded = testMongirl.decodeTo(ExampleDoubleConnection1.class, ((BsonObjectId) testMongirl.store(new ExampleDoubleConnection1())).getValue());
+            assertEquals(decoded.iddd, decoded.connection2s.get(0).connection1.iddd);
+            assertSame(decoded, decoded.connection2s.get(0).connection1);
+
+            testMongirl.store(new ExampleArrayClass(3));
+            ExampleArrayClass array = testMongirl.decodeAll(ExampleArrayClass.class).get(0);
+            assertEquals(2, array.nmbrs[1]);
+            assertEquals("testuser2", array.enhancedArray[2].haha);
+        } finally {
+            testMongirl.codecMode = false;
+        }
+    }
+
+    @Test
+    public void testCodecModeCompatibility() {
+        testMongirl.codecMode = true;
+        try {
+            testMongirl.store(new ExampleSubClass());
+            testMongirl.store(new ExampleEnum(7));
+        } finally {
+            testMongirl.codecMode = false;
+        }
+
+        // Documents written by the codecs can be decoded without them
+        assertEquals("20", testMongirl.decodeAll(ExampleSubClass.class).get(0).getSuperInt());
+        assertEquals("TYPO2", testMongirl.decodeFromFilters(ExampleEnum.class, new Pair("id", 7)).tip.toString());
+    }
+
+    @AfterEach
+    public void clearDB() {
+        cleanUp();
+    }
+
+    @AfterAll
+    public static void cleanUp() {
+        DB.drop();
+    }
+}
@@ -0,0 +1,118 @@
+package de.yniklas.mongirl;
+
+import de.yniklas.mongirl.examples.ExampleArrayClass;
+import de.yniklas.mongirl.examples.ExampleFolded;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Measures the encode and decode paths of {@link Mongirl} for whole object graphs, without a
+ * database: {@link Mongirl#createDocumentOf} for every object of the graph and
+ * {@link DecodeContext} decoding the graph from its documents. Not part of the test run, start it
+ * after {@code mvn test-compile} with
+ *
+ * <pre>
+ * java -cp target/classes:target/test-classes:&lt;dependencies&gt; de.yniklas.mongirl.EncodeDecodeBenchmark [iterations]
+ * </pre>
+ *
+ * To compare changes, run it on both revisions.
+ */
+public class EncodeDecodeBenchmark {
+    private static final int DEFAULT_ITERATIONS = 200_000;
+
+    private static long blackhole;
+
+    public static void main(String[] args) {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_ITERATIONS;
+        Mongirl mongirl = new Mongirl("localhost", 27017, "benchmark");
+
+        System.out.println("+ Class             + Objects + Encode [ns] + Decode [ns] +");
+        run(mongirl, "ExampleFolded", ExampleFolded.class, () -> new ExampleFolded("benchmark"), iterations);
+        run(mongirl, "ExampleArrayClass", ExampleArrayClass.class, () -> new ExampleArrayClass(5), iterations);
+        System.out.println("(checksum " + blackhole + ")");
+    }
+
+    private static <T> void run(Mongirl mongirl, String name, Class<T> rootClass, Supplier<T> factory, int iterations) {
+        T root = factory.get();
+        Graph graph = encode(mongirl, root);
+
+        for (int i = 0; i < iterations / 4; i++) {
+            blackhole += encode(mongirl, root).documents.size();
+            blackhole += System.identityHashCode(decode(rootClass, graph));
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            blackhole += encode(mongirl, root).documents.size();
+        }
+        long encode = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            blackhole += System.identityHashCode(decode(rootClass, graph));
+        }
+        long decode = System.nanoTime() - start;
+
+        String encodeStr = String.format("%.1f", encode / (double) iterations);
+        String decodeStr = String.format("%.1f", decode / (double) iterations);
+        String objects = String.valueOf(graph.documents.size());
+        System.out.println("+ " + name + " ".repeat(18 - name.length())
+                + "+ " + objects + " ".repeat(8 - objects.length())
+                + "+ " + encodeStr + " ".repeat(12 - encodeStr.length())
+                + "+ " + decodeStr + " ".repeat(12 - decodeStr.length()) + "+");
+    }
+
+    /**
+     * Encodes the object and everything it references, each object once, with ids assigned in
+     * the order the objects are reached.
+     */
+    private static Graph encode(Mongirl mongirl, Object root) {
+        Graph graph = new Graph();
+        Map<Object, ObjectId> ids = new IdentityHashMap<>();
+        List<Object> queue = new ArrayList<>();
+        ids.put(root, new ObjectId());
+        queue.add(root);
+
+        for (int i = 0; i < queue.size(); i++) {
+            Object object = queue.get(i);
+            Document document = mongirl.createDocumentOf(object, (key, referenced, element) ->
+                    ids.computeIfAbsent(referenced, unused -> {
+                        queue.add(referenced);
+                        return new ObjectId();
+                    }));
+            ObjectId id = ids.get(object);
+            document.append("_id", id);
+            graph.documents.put(id, document);
+            graph.collections.put(id, Mongirl.collection(object.getClass()));
+        }
+        graph.root = ids.get(root);
+        return graph;
+    }
+
+    /**
+     * Decodes the graph from its documents, level by level like a decode from the database.
+     */
+    private static <T> T decode(Class<T> rootClass, Graph graph) {
+        DecodeContext context = new DecodeContext(null);
+        graph.documents.forEach((id, document) -> context.prefetch(graph.collections.get(id), id, document));
+        context.decodeReference(graph.root, rootClass, null);
+        while (context.nextLevel() != null) {
+            context.completeLevel(Map.of());
+        }
+        context.assign();
+        return rootClass.cast(context.get(graph.root));
+    }
+
+    private static final class Graph {
+        final Map<ObjectId, Document> documents = new LinkedHashMap<>();
+        final Map<ObjectId, String> collections = new LinkedHashMap<>();
+        ObjectId root;
+    }
+}
@@ -0,0 +1,33 @@
+package de.yniklas.mongirl;
+
+import de.yniklas.mongirl.examples.ExampleArrayClass;
+import de.yniklas.mongirl.examples.ExampleSubObject;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * Checks the {@link FieldAccessor}s of the stored fields without a database. The cost of the
+ * encode and decode paths is measured by {@link EncodeDecodeBenchmark}.
+ */
+public class FieldAccessorTests {
+    @Test
+    public void testAccessors() {
+        ExampleArrayClass source = new ExampleArrayClass(3);
+        ExampleArrayClass target = new ExampleArrayClass(0);
+
+        for (FieldMapping fieldMapping : ClassMapping.of(ExampleArrayClass.class).storedFields) {
+            fieldMapping.accessor.set(target, fieldMapping.accessor.get(source));
+        }
+
+        assertArrayEquals(source.nmbrs, target.nmbrs);
+        assertSame(source.enhancedArray, target.enhancedArray);
+
+        FieldMapping haha = ClassMapping.of(ExampleSubObject.class).equalityFields.get(0);
+        ExampleSubObject sub = new ExampleSubObject("x");
+        haha.accessor.set(sub, "42");
+        assertEquals("42", sub.haha);
+    }
+}
@@ -0,0 +1,82 @@
+package de.yniklas.mongirl;
+
+import com.mongodb.client.model.Filters;
+import de.yniklas.mongirl.examples.ExampleSubObject;
+import org.bson.BsonObjectId;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that concurrent decodes of a document join one fetch, needs a MongoDB on localhost:27017.
+ */
+public class InFlightFetchesTests {
+    private static final int THREADS = 8;
+
+    private final Mongirl mongirl = new Mongirl("localhost", 27017, "test");
+
+    @AfterEach
+    public void drop() {
+        mongirl.getDB().getCollection("sub").drop();
+    }
+
+    @Test
+    public void testCoalescedFetches() throws Exception {
+        mongirl.coalesceFetches = true;
+        ObjectId id = ((BsonObjectId) mongirl.store(new ExampleSubObject("coalesced"))).getValue();
+
+        long before = mongirl.inFlightFetches.run();
+
+        // Holds a fetch of the document open until all decodes are waiting for it
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService threads = Executors.newFixedThreadPool(THREADS + 1);
+        try {
+            Future<Map<ObjectId, Object>> held = threads.submit(() -> mongirl.inFlightFetches.fetch("sub", List.of(id), ids -> {
+                try {
+                    release.await();
+                } catch (InterruptedException exception) {
+                    Thread.currentThread().interrupt();
+                }
+                return Map.of(id, mongirl.getDB().getCollection("sub").find(Filters.eq("_id", id)).first());
+            }));
+            while (mongirl.inFlightFetches.run() == before) {
+                Thread.sleep(1);
+            }
+
+            List<Future<ExampleSubObject>> decodes = new ArrayList<>();
+            for (int i = 0; i < THREADS; i++) {
+                decodes.add(threads.submit(() -> mongirl.decodeTo(ExampleSubObject.class, id)));
+            }
+            Thread.sleep(200);
+            release.countDown();
+
+            assertTrue(held.get().get(id) instanceof Document);
+            Set<ExampleSubObject> instances = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (Future<ExampleSubObject> decode : decodes) {
+                ExampleSubObject decoded = decode.get();
+                assertEquals("coalesced", decoded.haha);
+                instances.add(decoded);
+            }
+            // Every thread decodes its own object, but the document is fetched fewer times
+            assertEquals(THREADS, instances.size());
+            assertTrue(mongirl.inFlightFetches.run() - before < THREADS);
+        } finally {
+            threads.shutdown();
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package de.yniklas.mongirl;
+
+import de.yniklas.mongirl.examples.ExampleDoubleConnection1;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks the planned {@code $lookup} stages without a database.
+ */
+public class LookupPlanTests {
+    @Test
+    public void testStagesAreLimited() {
+        // The cycle of the connections adds a stage per level
+        assertEquals(5, LookupPlan.of(ExampleDoubleConnection1.class, 5).stages.size());
+        LookupPlan plan = LookupPlan.of(ExampleDoubleConnection1.class, 1000);
+        assertEquals(LookupPlan.MAX_STAGES, plan.stages.size());
+        assertEquals("doubled", plan.collections.get(LookupPlan.PREFIX + 0));
+        assertEquals("doubledorigin", plan.collections.get(LookupPlan.PREFIX + 1));
+    }
+}
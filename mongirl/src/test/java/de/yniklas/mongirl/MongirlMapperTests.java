@@ -0,0 +1,44 @@
+package de.yniklas.mongirl;
+
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that Mongirl picks up the mappers generated by the {@code mongirl-processor}. The
+ * processor is a test dependency, so it generates the mapper of {@link Mapped} when the tests are
+ * compiled. Runs without a database.
+ */
+public class MongirlMapperTests {
+    @Store(collection = "mapped")
+    public static class Mapped {
+        @StoreWith(equalityRequirement = true) public String name;
+        @StoreWith public int number;
+        @StoreWith public long big;
+
+        public Mapped(String name, int number) {
+            this.name = name;
+            this.number = number;
+        }
+    }
+
+    @Test
+    public void testGeneratedMapperIsUsed() {
+        ClassMapping mapping = ClassMapping.of(Mapped.class);
+        assertTrue(mapping.mapper instanceof MongirlMapperTests_Mapped_MongirlMapper);
+
+        Mapped mapped = new Mapped("mapped", 5);
+        mapped.big = 7L;
+        Document document = new Mongirl("localhost", 27017, "test").createDocumentOf(mapped, (key, referenced, element) -> null);
+        assertEquals(new Document("name", "mapped").append("number", 5).append("big", 7L), document);
+
+        ObjectId id = new ObjectId();
+        Mapped decoded = Mongirl.create(Mapped.class, document.append("_id", id), new DecodeContext(null));
+        assertEquals("mapped", decoded.name);
+        assertEquals(5, decoded.number);
+        assertEquals(7L, decoded.big);
+    }
+}